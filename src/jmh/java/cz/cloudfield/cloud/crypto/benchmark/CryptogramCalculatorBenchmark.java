@@ -0,0 +1,73 @@
+package cz.cloudfield.cloud.crypto.benchmark;
+
+import cz.cloudfield.cloud.crypto.payment.key.HardcodedKeyManager;
+import cz.cloudfield.cloud.crypto.utils.CryptoUtils;
+import cz.cloudfield.cloud.crypto.utils.CryptogramCalculator;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CryptogramCalculatorBenchmark {
+
+    static final String PAN = "3205984555533619";
+    static final String PAN_SEQ_NUMBER = "70";
+    static final String ATC = "0F40";
+    // Amount, currency, country, TVR, date, type, unpredictable number, AIP, ATC, CVR (43 bytes)
+    static final String TRANSACTION_DATA = "000000001000000000000000020300000000000203241018000123456758000F400A0000000000000000000000";
+
+    @Param({"BC", "SunJCE"})
+    private String aesProvider;
+
+    private SecretKey imk;
+    private SecretKey udk;
+    private SecretKey sessionKey;
+    private byte[] atc;
+    private ByteBuffer transactionData;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        CryptoUtils.useProviders(Map.of("AES", aesProvider));
+
+        imk = new HardcodedKeyManager().getKey("imk-aes", "01");
+        atc = HexFormat.of().parseHex(ATC);
+        transactionData = ByteBuffer.wrap(HexFormat.of().parseHex(TRANSACTION_DATA));
+        udk = CryptogramCalculator.deriveUDK(PAN, PAN_SEQ_NUMBER, imk);
+        sessionKey = CryptogramCalculator.deriveSessionKey(atc, udk);
+    }
+
+    @Benchmark
+    public byte[] calculateArqc() throws GeneralSecurityException {
+        return CryptogramCalculator.calculateARQC(imk, PAN, PAN_SEQ_NUMBER, TRANSACTION_DATA, ATC);
+    }
+
+    @Benchmark
+    public byte[] calculateArqcFromBytes() throws GeneralSecurityException {
+        return CryptogramCalculator.calculateARQC(imk, PAN, PAN_SEQ_NUMBER, transactionData, atc);
+    }
+
+    @Benchmark
+    public SecretKey deriveUdk() throws GeneralSecurityException {
+        return CryptogramCalculator.deriveUDK(PAN, PAN_SEQ_NUMBER, imk);
+    }
+
+    @Benchmark
+    public SecretKey deriveSessionKey() throws GeneralSecurityException {
+        return CryptogramCalculator.deriveSessionKey(atc, udk);
+    }
+
+    @Benchmark
+    public byte[] calculateMac() throws GeneralSecurityException {
+        return CryptogramCalculator.calculateMAC(sessionKey, transactionData);
+    }
+}
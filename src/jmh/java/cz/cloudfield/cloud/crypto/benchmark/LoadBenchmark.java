@@ -0,0 +1,161 @@
+package cz.cloudfield.cloud.crypto.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop HTTP load test of a running instance - each of N concurrent clients sends its next request as soon as
+ * it receives the previous response. Run the application once with {@code VIRTUAL_THREADS_ENABLED=true} and once with
+ * {@code false} to compare virtual and platform request threads.
+ *
+ * <p>
+ * Arguments: endpoint URL, comma separated concurrency levels, duration of each level (ISO-8601) and an optional
+ * file with the JSON request body. Every level is preceded by a warm-up of a fifth of its duration.
+ * </p>
+ */
+public class LoadBenchmark {
+
+    private static final String DEFAULT_URL = "http://localhost:8080/api/payment-crypto/verify-pin";
+    private static final String DEFAULT_CONCURRENCY = "1000,5000,10000";
+    private static final String DEFAULT_DURATION = "PT30S";
+
+    private static final String DEFAULT_BODY = """
+        {
+          "zpkAlias": "zpk-tdes",
+          "pinBlock": "5AD87C67698D13F4",
+          "pvkAlias": "pvk-tdes",
+          "pan": "6203011199415646",
+          "pinValidationData": "123456N12345",
+          "decimalizationTable": "1234567890987654",
+          "pinLength": 4,
+          "offset": "5740FFFFFFFF"
+        }
+        """;
+
+    public static void main(String[] args) throws Exception {
+        URI uri = URI.create(argument(args, 0, DEFAULT_URL));
+        int[] concurrencyLevels = Arrays.stream(argument(args, 1, DEFAULT_CONCURRENCY).split(","))
+            .mapToInt(level -> Integer.parseInt(level.trim()))
+            .toArray();
+        Duration duration = Duration.parse(argument(args, 2, DEFAULT_DURATION));
+        String bodyFile = argument(args, 3, "");
+        String body = bodyFile.isEmpty() ? DEFAULT_BODY : Files.readString(Path.of(bodyFile));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(executor)
+                .build();
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+
+            System.out.printf("%s, %s per level%n", uri, duration);
+            System.out.printf("%12s %12s %10s %10s %10s %10s%n", "concurrency", "requests/s", "errors", "p50 [ms]", "p99 [ms]", "max [ms]");
+            for (int concurrency : concurrencyLevels) {
+                run(client, request, executor, concurrency, duration.dividedBy(5));
+                Result result = run(client, request, executor, concurrency, duration);
+
+                System.out.printf("%12d %12.0f %10d %10.1f %10.1f %10.1f%n", concurrency, result.throughput(), result.errors(),
+                    result.percentile(0.5), result.percentile(0.99), result.percentile(1.0));
+            }
+        }
+    }
+
+    private static Result run(HttpClient client, HttpRequest request, ExecutorService executor, int concurrency, Duration duration) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        LongAdder errors = new LongAdder();
+
+        List<Future<LatencyRecorder>> clients = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            clients.add(executor.submit(() -> {
+                LatencyRecorder latencies = new LatencyRecorder();
+                while (System.nanoTime() < deadline) {
+                    long requestStart = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 200) {
+                            latencies.add(System.nanoTime() - requestStart);
+                        } else {
+                            errors.increment();
+                        }
+                    } catch (IOException e) {
+                        errors.increment();
+                    }
+                }
+                return latencies;
+            }));
+        }
+
+        LatencyRecorder all = new LatencyRecorder();
+        for (Future<LatencyRecorder> future : clients) {
+            try {
+                all.addAll(future.get());
+            } catch (ExecutionException e) {
+                errors.increment();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] latencies = all.toSortedArray();
+        return new Result(latencies.length / seconds, errors.sum(), latencies);
+    }
+
+    private static String argument(String[] args, int index, String defaultValue) {
+        return args.length > index && !args[index].isBlank() ? args[index] : defaultValue;
+    }
+
+    private record Result(double throughput, long errors, long[] sortedLatencies) {
+
+        double percentile(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = Math.max(0, (int) Math.ceil(percentile * sortedLatencies.length) - 1);
+            return sortedLatencies[index] / 1e6;
+        }
+    }
+
+    private static final class LatencyRecorder {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(LatencyRecorder other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
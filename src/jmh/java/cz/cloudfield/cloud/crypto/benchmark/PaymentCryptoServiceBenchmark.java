@@ -0,0 +1,84 @@
+package cz.cloudfield.cloud.crypto.benchmark;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.CryptoMetricsProperties;
+import cz.cloudfield.cloud.crypto.key.KeyManager;
+import cz.cloudfield.cloud.crypto.payment.*;
+import cz.cloudfield.cloud.crypto.payment.key.HardcodedKeyManager;
+import cz.cloudfield.cloud.crypto.utils.CryptogramCalculator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static cz.cloudfield.cloud.crypto.benchmark.CryptogramCalculatorBenchmark.*;
+import static cz.cloudfield.cloud.crypto.benchmark.PinOffsetHelperBenchmark.*;
+
+/**
+ * Full service paths with keys held in memory by {@link HardcodedKeyManager}, i.e. without database and Key Vault.
+ * Stage metrics are recorded either to no-op meters or to Prometheus histograms to show their overhead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentCryptoServiceBenchmark {
+
+    @Param({"false", "true"})
+    private boolean udkCacheEnabled;
+
+    @Param({"noop", "prometheus"})
+    private String meterRegistry;
+
+    private ForkJoinPool batchPool;
+    private PaymentCryptoService paymentCryptoService;
+    private VerifyArqcRequestDTO verifyArqcRequest;
+    private VerifyPinRequestDTO verifyPinRequest;
+    private CalculateOffsetRequestDTO calculateOffsetRequest;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        KeyManager keyManager = new HardcodedKeyManager();
+        batchPool = new ForkJoinPool(1);
+        UdkCache udkCache = new UdkCache(new UdkCacheProperties(udkCacheEnabled, 1024));
+        MeterRegistry registry = meterRegistry.equals("prometheus") ? new PrometheusMeterRegistry(PrometheusConfig.DEFAULT) : new CompositeMeterRegistry();
+        CryptoMetrics metrics = new CryptoMetrics(registry, new CryptoMetricsProperties(1000));
+        paymentCryptoService = new PaymentCryptoServiceImpl(keyManager, udkCache, batchPool, new PaymentBatchProperties(1, 1), metrics);
+
+        byte[] arqc = CryptogramCalculator.calculateARQC(keyManager.getKey("imk-aes", "01"), CryptogramCalculatorBenchmark.PAN, PAN_SEQ_NUMBER, TRANSACTION_DATA, ATC);
+        verifyArqcRequest = new VerifyArqcRequestDTO("imk-aes", TRANSACTION_DATA, ATC, CryptogramCalculatorBenchmark.PAN, PAN_SEQ_NUMBER, arqc);
+
+        String pinBlock = new PinBlockConstructor(keyManager).constructPinBlock(PIN, PinOffsetHelperBenchmark.PAN);
+        verifyPinRequest = new VerifyPinRequestDTO("zpk-tdes", pinBlock, "pvk-tdes", PinOffsetHelperBenchmark.PAN,
+            PIN_VALIDATION_DATA, DECIMALIZATION_TABLE, PIN_LENGTH, OFFSET);
+        calculateOffsetRequest = new CalculateOffsetRequestDTO("zpk-tdes", pinBlock, "pvk-tdes", PinOffsetHelperBenchmark.PAN,
+            PIN_VALIDATION_DATA, DECIMALIZATION_TABLE, PIN_LENGTH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchPool.shutdown();
+    }
+
+    @Benchmark
+    public VerifyArqcResponseDTO verifyArqc() throws GeneralSecurityException {
+        return paymentCryptoService.verifyArqc(verifyArqcRequest);
+    }
+
+    @Benchmark
+    public VerifyPinResponseDTO verifyPin() throws GeneralSecurityException {
+        return paymentCryptoService.verifyPin(verifyPinRequest);
+    }
+
+    @Benchmark
+    public String calculateOffset() throws GeneralSecurityException {
+        return paymentCryptoService.calculateOffset(calculateOffsetRequest);
+    }
+}
@@ -0,0 +1,66 @@
+package cz.cloudfield.cloud.crypto.benchmark;
+
+import cz.cloudfield.cloud.crypto.key.KeyManager;
+import cz.cloudfield.cloud.crypto.payment.PinBlockConstructor;
+import cz.cloudfield.cloud.crypto.payment.key.HardcodedKeyManager;
+import cz.cloudfield.cloud.crypto.utils.PinOffsetHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PinOffsetHelperBenchmark {
+
+    static final String PIN = "1234";
+    static final String PAN = "6203011199415646";
+    static final String PIN_VALIDATION_DATA = "123456N12345";
+    static final String DECIMALIZATION_TABLE = "1234567890987654";
+    static final int PIN_LENGTH = 4;
+    static final String OFFSET = "5740FFFFFFFF";
+
+    private PinOffsetHelper pinOffsetHelper;
+    private String pinBlock;
+    private byte[] pinBlockBytes;
+    private String naturalPin;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        KeyManager keyManager = new HardcodedKeyManager();
+        pinOffsetHelper = new PinOffsetHelper(keyManager.getKey("pvk-tdes", "01"), keyManager.getKey("zpk-tdes", "01"));
+        pinBlock = new PinBlockConstructor(keyManager).constructPinBlock(PIN, PAN);
+        pinBlockBytes = HexFormat.of().parseHex(pinBlock);
+        naturalPin = pinOffsetHelper.calculateNaturalPin(PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH);
+    }
+
+    @Benchmark
+    public String extractPinFromPinBlock() throws GeneralSecurityException {
+        return pinOffsetHelper.extractPinFromPinBlock(pinBlock, PAN);
+    }
+
+    @Benchmark
+    public String calculateNaturalPin() throws GeneralSecurityException {
+        return pinOffsetHelper.calculateNaturalPin(PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH);
+    }
+
+    @Benchmark
+    public String calculateOffset() {
+        return pinOffsetHelper.calculateOffset(naturalPin, PIN);
+    }
+
+    @Benchmark
+    public String calculateExpectedPin() {
+        return pinOffsetHelper.calculateExpectedPin(naturalPin, OFFSET);
+    }
+
+    @Benchmark
+    public boolean verifyPin() throws GeneralSecurityException {
+        return pinOffsetHelper.verifyPin(pinBlockBytes, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH, OFFSET);
+    }
+}
@@ -1,6 +1,7 @@
 package cz.cloudfield.cloud.crypto;
 
 import com.azure.identity.DefaultAzureCredentialBuilder;
+import com.azure.security.keyvault.keys.KeyAsyncClient;
 import com.azure.security.keyvault.keys.KeyClient;
 import com.azure.security.keyvault.keys.KeyClientBuilder;
 import org.springframework.beans.factory.annotation.Value;
@@ -28,4 +29,13 @@ public class Application {
             .credential(new DefaultAzureCredentialBuilder().build())
             .buildClient();
     }
+
+    @Bean
+    @ConditionalOnProperty(name = "spring.cloud.azure.keyvault.enabled", havingValue = "true")
+    public KeyAsyncClient keyAsyncClient(@Value("${key-vault.url}") String keyVaultUrl) {
+        return new KeyClientBuilder()
+            .vaultUrl(keyVaultUrl)
+            .credential(new DefaultAzureCredentialBuilder().build())
+            .buildAsyncClient();
+    }
 }
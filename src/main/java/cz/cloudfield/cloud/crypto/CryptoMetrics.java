@@ -0,0 +1,119 @@
+package cz.cloudfield.cloud.crypto;
+
+import cz.cloudfield.cloud.crypto.utils.CryptoStage;
+import cz.cloudfield.cloud.crypto.utils.StageListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stage level metrics of payment crypto operations - timer {@value #STAGE_TIMER} with percentile histogram tagged
+ * by operation, stage and key alias, and counter {@value #KEY_CACHE_COUNTER} of key cache hits and misses.
+ *
+ * <p>
+ * Meters are registered on first use and cached, so recording a stage costs a map lookup and a histogram update.
+ * Callers on the hot path should resolve timers once per operation by {@link #timer(String, CryptoStage, String)}.
+ * </p>
+ */
+@Component
+public class CryptoMetrics {
+
+    public static final String STAGE_TIMER = "payment.crypto.stage";
+    public static final String KEY_CACHE_COUNTER = "payment.crypto.key.cache";
+    public static final String OTHER_ALIAS = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final int maxAliases;
+
+    private final Map<StageId, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<CacheId, Counter> cacheCounters = new ConcurrentHashMap<>();
+    private final Set<String> aliases = ConcurrentHashMap.newKeySet();
+
+    public CryptoMetrics(MeterRegistry meterRegistry, CryptoMetricsProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.maxAliases = properties.maxAliases();
+    }
+
+    public Timer timer(String operation, CryptoStage stage, String alias) {
+        StageId id = new StageId(operation, stage, aliasTag(alias));
+
+        Timer timer = timers.get(id);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(id, this::registerTimer);
+        }
+        return timer;
+    }
+
+    public void record(String operation, CryptoStage stage, String alias, long nanos) {
+        timer(operation, stage, alias).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return listener of {@link cz.cloudfield.cloud.crypto.utils.PinOffsetHelper} stages with resolved timers,
+     * PIN block decryption is tagged by the ZPK alias, natural PIN calculation by the PVK alias
+     */
+    public StageListener pinStages(String operation, String pvkAlias, String zpkAlias) {
+        Timer pinBlockDecrypt = timer(operation, CryptoStage.PIN_BLOCK_DECRYPT, zpkAlias);
+        Timer naturalPin = timer(operation, CryptoStage.NATURAL_PIN, pvkAlias);
+
+        return (stage, nanos) -> (stage == CryptoStage.PIN_BLOCK_DECRYPT ? pinBlockDecrypt : naturalPin).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Admits alias of a successfully loaded key as a metric tag, other aliases are tagged {@value #OTHER_ALIAS}.
+     * Aliases of requests for missing keys therefore never create meters.
+     */
+    public void admitAlias(String alias) {
+        // the limit is not strict under concurrent admission, which is fine for bounding cardinality
+        if (aliases.size() < maxAliases) {
+            aliases.add(alias);
+        }
+    }
+
+    public void keyCache(String alias, boolean hit) {
+        CacheId id = new CacheId(aliasTag(alias), hit);
+
+        Counter counter = cacheCounters.get(id);
+        if (counter == null) {
+            counter = cacheCounters.computeIfAbsent(id, this::registerCounter);
+        }
+        counter.increment();
+    }
+
+    private Timer registerTimer(StageId id) {
+        return Timer.builder(STAGE_TIMER)
+            .description("Duration of a stage of payment crypto operation")
+            .tag("operation", id.operation())
+            .tag("stage", id.stage().tag())
+            .tag("alias", id.alias())
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofNanos(500))
+            .maximumExpectedValue(Duration.ofSeconds(5))
+            .register(meterRegistry);
+    }
+
+    private Counter registerCounter(CacheId id) {
+        return Counter.builder(KEY_CACHE_COUNTER)
+            .description("Lookups of unwrapped keys in the key cache")
+            .tag("alias", id.alias())
+            .tag("result", id.hit() ? "hit" : "miss")
+            .register(meterRegistry);
+    }
+
+    private String aliasTag(String alias) {
+        return aliases.contains(alias) ? alias : OTHER_ALIAS;
+    }
+
+    private record StageId(String operation, CryptoStage stage, String alias) {
+    }
+
+    private record CacheId(String alias, boolean hit) {
+    }
+}
@@ -0,0 +1,15 @@
+package cz.cloudfield.cloud.crypto;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param maxAliases - maximum number of distinct key aliases used as metric tags, aliases are admitted when their key
+ *                   is loaded, further aliases are tagged {@value CryptoMetrics#OTHER_ALIAS}. Every alias costs
+ *                   a percentile histogram per operation and stage, so the limit should cover only the hot keys
+ */
+@ConfigurationProperties("crypto.metrics")
+public record CryptoMetricsProperties(
+    @DefaultValue("50") int maxAliases
+) {
+}
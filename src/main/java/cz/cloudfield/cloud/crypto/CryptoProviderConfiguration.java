@@ -0,0 +1,108 @@
+package cz.cloudfield.cloud.crypto;
+
+import cz.cloudfield.cloud.crypto.utils.CryptoUtils;
+import cz.cloudfield.cloud.crypto.utils.CryptogramCalculator;
+import cz.cloudfield.cloud.crypto.utils.PinOffsetHelper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Configuration;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies {@link CryptoProviderProperties} to {@link CryptoUtils}. Unless disabled, ARQC and PIN operations are
+ * first calculated with BouncyCastle and with the configured providers on random keys and data, and the application
+ * fails to start when the results differ.
+ */
+@Configuration
+public class CryptoProviderConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(CryptoProviderConfiguration.class);
+
+    private static final int SELF_CHECK_ROUNDS = 16;
+
+    private final CryptoProviderProperties properties;
+
+    public CryptoProviderConfiguration(CryptoProviderProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void configureProviders() throws GeneralSecurityException {
+        if (!properties.selfCheck() || properties.providers().isEmpty()) {
+            CryptoUtils.useProviders(properties.providers());
+            return;
+        }
+
+        List<SelfCheckInput> inputs = SelfCheckInput.random(SELF_CHECK_ROUNDS);
+
+        CryptoUtils.useProviders(Map.of());
+        List<String> expected = calculate(inputs);
+
+        CryptoUtils.useProviders(properties.providers());
+        List<String> actual;
+        try {
+            actual = calculate(inputs);
+        } catch (GeneralSecurityException e) {
+            CryptoUtils.useProviders(Map.of());
+            throw new IllegalStateException("Security providers " + properties.providers() + " failed self-check.", e);
+        }
+
+        if (!expected.equals(actual)) {
+            CryptoUtils.useProviders(Map.of());
+            throw new IllegalStateException("Security providers " + properties.providers() + " produce different results than " + CryptoUtils.SECURITY_PROVIDER + ".");
+        }
+        logger.info("Self-check of security providers {} passed.", properties.providers());
+    }
+
+    private static List<String> calculate(List<SelfCheckInput> inputs) throws GeneralSecurityException {
+        HexFormat hex = HexFormat.of().withUpperCase();
+
+        List<String> results = new ArrayList<>();
+        for (SelfCheckInput input : inputs) {
+            SecretKey imk = new SecretKeySpec(input.imk(), "AES");
+            SecretKey pvk = new SecretKeySpec(input.tdesKey(), "DESede");
+
+            results.add(hex.formatHex(CryptogramCalculator.calculateARQC(imk, input.pan(), "01", input.transactionData(), "0001")));
+            results.add(hex.formatHex(CryptoUtils.decrypt(imk, input.block())));
+
+            PinOffsetHelper pinOffsetHelper = new PinOffsetHelper(pvk, pvk);
+            results.add(pinOffsetHelper.calculateNaturalPin(input.pan(), "0123456789012345", "123456N12345", 6));
+            results.add(hex.formatHex(CryptoUtils.decrypt(pvk, input.block())));
+        }
+        return results;
+    }
+
+    private record SelfCheckInput(byte[] imk, byte[] tdesKey, String pan, String transactionData, byte[] block) {
+
+        static List<SelfCheckInput> random(int count) {
+            SecureRandom random = new SecureRandom();
+            HexFormat hex = HexFormat.of().withUpperCase();
+
+            List<SelfCheckInput> inputs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] imk = new byte[16];
+                // both double and triple length TDES keys are in use
+                byte[] tdesKey = new byte[i % 2 == 0 ? 16 : 24];
+                byte[] transactionData = new byte[1 + random.nextInt(64)];
+                byte[] block = new byte[16];
+                random.nextBytes(imk);
+                random.nextBytes(tdesKey);
+                random.nextBytes(transactionData);
+                random.nextBytes(block);
+
+                String pan = String.valueOf(4_000_000_000_000_000L + random.nextLong(1_000_000_000_000_000L));
+                inputs.add(new SelfCheckInput(imk, tdesKey, pan, hex.formatHex(transactionData), block));
+            }
+            return inputs;
+        }
+    }
+}
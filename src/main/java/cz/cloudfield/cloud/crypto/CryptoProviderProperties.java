@@ -0,0 +1,17 @@
+package cz.cloudfield.cloud.crypto;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * @param providers - JCA provider name by key algorithm (AES, DESede), BouncyCastle is used for algorithms not listed
+ * @param selfCheck - compare results of configured providers with BouncyCastle at startup
+ */
+@ConfigurationProperties("crypto")
+public record CryptoProviderProperties(
+    @DefaultValue Map<String, String> providers,
+    @DefaultValue("true") boolean selfCheck
+) {
+}
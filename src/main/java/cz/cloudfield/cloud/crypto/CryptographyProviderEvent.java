@@ -0,0 +1,55 @@
+package cz.cloudfield.cloud.crypto;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Operation of {@link CryptographyProvider}, the payload itself is never recorded.
+ */
+@Name("cz.cloudfield.crypto.CryptographyProvider")
+@Label("Cryptography Provider Operation")
+@Category({"Payment Crypto", "Key Vault"})
+@Description("Encrypt, decrypt, sign or verify operation with a Key Vault key")
+@StackTrace(false)
+class CryptographyProviderEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Key Alias")
+    String keyAlias;
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadSize;
+
+    @Label("Local")
+    @Description("Public key operation computed locally without a call to Key Vault")
+    boolean local;
+
+    @Label("Success")
+    boolean success;
+
+    /**
+     * Ends the event and commits it when it passes the configured threshold.
+     */
+    void commit(String operation, String algorithm, String keyAlias, int payloadSize, boolean local, boolean success) {
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.algorithm = algorithm;
+            this.keyAlias = keyAlias;
+            this.payloadSize = payloadSize;
+            this.local = local;
+            this.success = success;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package cz.cloudfield.cloud.crypto;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * @param enabled     - start a continuous recording with JDK default settings and payment crypto events
+ * @param maxAge      - how long recorded data is kept
+ * @param maxSize     - maximum size of recorded data kept on disk
+ * @param destination - file the recording is written to on shutdown, not written when empty
+ */
+@ConfigurationProperties("crypto.jfr")
+public record FlightRecorderProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("1h") Duration maxAge,
+    @DefaultValue("256MB") DataSize maxSize,
+    Path destination
+) {
+}
@@ -0,0 +1,64 @@
+package cz.cloudfield.cloud.crypto;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Continuous JFR recording named {@value #NAME} with JDK default settings (GC, safepoints, I/O, ...) combined with
+ * {@value #SETTINGS}. It can be dumped at any time by {@code jcmd <pid> JFR.dump name=payment-crypto filename=...}.
+ */
+@Component
+@ConditionalOnProperty(name = "crypto.jfr.enabled", havingValue = "true")
+public class FlightRecording {
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecording.class);
+
+    public static final String NAME = "payment-crypto";
+    public static final String SETTINGS = "jfr/payment-crypto.jfc";
+
+    private final FlightRecorderProperties properties;
+    private final Recording recording;
+
+    public FlightRecording(FlightRecorderProperties properties) throws IOException, ParseException {
+        this.properties = properties;
+
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        try (Reader reader = new InputStreamReader(new ClassPathResource(SETTINGS).getInputStream(), StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.create(reader).getSettings());
+        }
+
+        this.recording = new Recording(settings);
+        recording.setName(NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(properties.maxAge());
+        recording.setMaxSize(properties.maxSize().toBytes());
+        recording.start();
+
+        logger.info("Flight recording {} started, keeping {} / {}.", NAME, properties.maxAge(), properties.maxSize());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        try {
+            if (properties.destination() != null) {
+                recording.dump(properties.destination());
+                logger.info("Flight recording {} written to {}.", NAME, properties.destination());
+            }
+        } finally {
+            recording.close();
+        }
+    }
+}
@@ -1,47 +1,208 @@
 package cz.cloudfield.cloud.crypto;
 
+import com.azure.core.exception.HttpResponseException;
 import com.azure.security.keyvault.keys.KeyClient;
+import com.azure.security.keyvault.keys.models.KeyVaultKey;
 import com.azure.security.keyvault.keys.cryptography.CryptographyClient;
 import com.azure.security.keyvault.keys.cryptography.models.EncryptionAlgorithm;
 import com.azure.security.keyvault.keys.cryptography.models.SignatureAlgorithm;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * {@link CryptographyProvider} backed by Azure Key Vault.
+ *
+ * <p>
+ * Key alias is either a key name, which resolves to the latest version of the key, or {@code name/version}.
+ * {@link CryptographyClient} instances are created once per alias and reused. Clients are rebuilt after
+ * {@code key-vault.client-refresh-interval}, so rotated keys are picked up. A call with a key name failing with
+ * a client error is retried once with a new client and public key, as the key may have been rotated in the meantime
+ * and the cached client still uses the previous version. Creation and reuse of clients is
+ * published as {@code cache.gets} metrics (miss/hit) of the {@code keyvault.cryptography.clients} cache.
+ * </p>
+ *
+ * <p>
+ * RSA encryption needs only the public key, so it is done locally with the public part of the key fetched
+ * from Key Vault once per refresh interval. Only decryption and signing call Key Vault.
+ * </p>
+ *
+ * <p>
+ * Public keys are fetched by the requesting thread outside of any cache lock, so virtual threads waiting
+ * for Key Vault do not pin their carrier thread. Concurrent requests for the same key wait for the first one.
+ * </p>
+ */
 @Component
 @ConditionalOnProperty(name = "spring.cloud.azure.keyvault.enabled", havingValue = "true")
 public class KeyVaultCryptographyProvider implements CryptographyProvider {
 
     private final KeyClient keyClient;
 
-    public KeyVaultCryptographyProvider(KeyClient keyClient) {
+    private final LoadingCache<String, CryptographyClient> cryptographyClients;
+    private final AsyncCache<String, PublicKey> publicKeys;
+
+    public KeyVaultCryptographyProvider(
+        KeyClient keyClient,
+        MeterRegistry meterRegistry,
+        @Value("${key-vault.client-refresh-interval:1h}") Duration clientRefreshInterval) {
         this.keyClient = keyClient;
+        this.cryptographyClients = Caffeine.newBuilder()
+            .expireAfterWrite(clientRefreshInterval)
+            .recordStats()
+            .build(this::createCryptographyClient);
+        this.publicKeys = Caffeine.newBuilder()
+            .expireAfterWrite(clientRefreshInterval)
+            .recordStats()
+            .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cryptographyClients, "keyvault.cryptography.clients");
+        CaffeineCacheMetrics.monitor(meterRegistry, publicKeys, "keyvault.public.keys");
     }
 
     @Override
     public byte[] encrypt(String algorithm, byte[] plaintext, String keyAlias) {
-        EncryptionAlgorithm encryptionAlgorithm = EncryptionAlgorithm.fromString(algorithm);
-        CryptographyClient cryptoClient = keyClient.getCryptographyClient(keyAlias);
-        return cryptoClient.encrypt(encryptionAlgorithm, plaintext).getCipherText();
+        LocalRsaEncryption localEncryption = LocalRsaEncryption.of(algorithm);
+        if (localEncryption != null) {
+            return record("encrypt", algorithm, keyAlias, plaintext.length, true,
+                () -> localEncryption.encrypt(publicKey(keyAlias), plaintext, keyAlias));
+        }
+
+        return record("encrypt", algorithm, keyAlias, plaintext.length, false, () -> withRefresh(keyAlias, () -> {
+            EncryptionAlgorithm encryptionAlgorithm = EncryptionAlgorithm.fromString(algorithm);
+            CryptographyClient cryptoClient = cryptographyClients.get(keyAlias);
+            return cryptoClient.encrypt(encryptionAlgorithm, plaintext).getCipherText();
+        }));
     }
 
     @Override
     public byte[] decrypt(String algorithm, byte[] ciphertext, String keyAlias) {
-        EncryptionAlgorithm encryptionAlgorithm = EncryptionAlgorithm.fromString(algorithm);
-        CryptographyClient cryptoClient = keyClient.getCryptographyClient(keyAlias);
-        return cryptoClient.decrypt(encryptionAlgorithm, ciphertext).getPlainText();
+        return record("decrypt", algorithm, keyAlias, ciphertext.length, false, () -> withRefresh(keyAlias, () -> {
+            EncryptionAlgorithm encryptionAlgorithm = EncryptionAlgorithm.fromString(algorithm);
+            CryptographyClient cryptoClient = cryptographyClients.get(keyAlias);
+            return cryptoClient.decrypt(encryptionAlgorithm, ciphertext).getPlainText();
+        }));
     }
 
     @Override
     public byte[] sign(String algorithm, byte[] data, String keyAlias) {
-        SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.fromString(algorithm);
-        CryptographyClient cryptoClient = keyClient.getCryptographyClient(keyAlias);
-        return cryptoClient.signData(signatureAlgorithm, data).getSignature();
+        return record("sign", algorithm, keyAlias, data.length, false, () -> withRefresh(keyAlias, () -> {
+            SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.fromString(algorithm);
+            CryptographyClient cryptoClient = cryptographyClients.get(keyAlias);
+            return cryptoClient.signData(signatureAlgorithm, data).getSignature();
+        }));
     }
 
     @Override
     public boolean verify(String algorithm, byte[] data, byte[] signature, String keyAlias) {
-        SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.fromString(algorithm);
-        CryptographyClient cryptoClient = keyClient.getCryptographyClient(keyAlias);
-        return cryptoClient.verifyData(signatureAlgorithm, data, signature).isValid();
+        return record("verify", algorithm, keyAlias, data.length, false, () -> withRefresh(keyAlias, () -> {
+            SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.fromString(algorithm);
+            CryptographyClient cryptoClient = cryptographyClients.get(keyAlias);
+            return cryptoClient.verifyData(signatureAlgorithm, data, signature).isValid();
+        }));
+    }
+
+    /**
+     * Drops cached client and public key of given key alias, next operation with the key creates a new one.
+     * Called when a Key Vault call with the alias fails, see {@link #retryAfterRefresh(String, Throwable)}.
+     *
+     * @param keyAlias - key name or {@code name/version}
+     */
+    public void refresh(String keyAlias) {
+        cryptographyClients.invalidate(keyAlias);
+        publicKeys.synchronous().invalidate(keyAlias);
+    }
+
+    /**
+     * @return true when the failed call used a key name, which resolves to the latest version, and Key Vault
+     * rejected the request itself - throttling and server errors are retried by the client pipeline already
+     */
+    static boolean retryAfterRefresh(String keyAlias, Throwable e) {
+        if (keyAlias.indexOf('/') >= 0 || !(e instanceof HttpResponseException responseException) || responseException.getResponse() == null) {
+            return false;
+        }
+        int status = responseException.getResponse().getStatusCode();
+        return status >= 400 && status < 500 && status != 429;
+    }
+
+    private <T> T withRefresh(String keyAlias, Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (HttpResponseException e) {
+            if (!retryAfterRefresh(keyAlias, e)) {
+                throw e;
+            }
+            refresh(keyAlias);
+            return call.get();
+        }
+    }
+
+    /**
+     * Runs the operation as {@link CryptographyProviderEvent}, only sizes of payloads are recorded.
+     */
+    private static <T> T record(String operation, String algorithm, String keyAlias, int payloadSize, boolean local, Supplier<T> call) {
+        CryptographyProviderEvent event = new CryptographyProviderEvent();
+        event.begin();
+        boolean success = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } finally {
+            event.commit(operation, algorithm, keyAlias, payloadSize, local, success);
+        }
+    }
+
+    private PublicKey publicKey(String keyAlias) {
+        CompletableFuture<PublicKey> publicKey = publicKeys.getIfPresent(keyAlias);
+        if (publicKey == null) {
+            CompletableFuture<PublicKey> loading = new CompletableFuture<>();
+            publicKey = publicKeys.asMap().putIfAbsent(keyAlias, loading);
+            if (publicKey == null) {
+                // This caller won the race - fetch the key, failed futures are removed from the cache automatically
+                publicKey = loading;
+                try {
+                    loading.complete(fetchPublicKey(keyAlias));
+                } catch (RuntimeException | Error e) {
+                    loading.completeExceptionally(e);
+                }
+            }
+        }
+
+        try {
+            return publicKey.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private PublicKey fetchPublicKey(String keyAlias) {
+        int versionSeparator = keyAlias.indexOf('/');
+        KeyVaultKey key = versionSeparator < 0
+            ? keyClient.getKey(keyAlias)
+            : keyClient.getKey(keyAlias.substring(0, versionSeparator), keyAlias.substring(versionSeparator + 1));
+
+        return key.getKey().toRsa(false).getPublic();
+    }
+
+    private CryptographyClient createCryptographyClient(String keyAlias) {
+        int versionSeparator = keyAlias.indexOf('/');
+        if (versionSeparator < 0) {
+            return keyClient.getCryptographyClient(keyAlias);
+        }
+        return keyClient.getCryptographyClient(keyAlias.substring(0, versionSeparator), keyAlias.substring(versionSeparator + 1));
     }
 }
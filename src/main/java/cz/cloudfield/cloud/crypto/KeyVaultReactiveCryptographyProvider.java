@@ -0,0 +1,152 @@
+package cz.cloudfield.cloud.crypto;
+
+import com.azure.security.keyvault.keys.KeyAsyncClient;
+import com.azure.security.keyvault.keys.cryptography.CryptographyAsyncClient;
+import com.azure.security.keyvault.keys.cryptography.models.DecryptResult;
+import com.azure.security.keyvault.keys.cryptography.models.EncryptResult;
+import com.azure.security.keyvault.keys.cryptography.models.EncryptionAlgorithm;
+import com.azure.security.keyvault.keys.cryptography.models.SignResult;
+import com.azure.security.keyvault.keys.cryptography.models.SignatureAlgorithm;
+import com.azure.security.keyvault.keys.cryptography.models.VerifyResult;
+import com.azure.security.keyvault.keys.models.KeyVaultKey;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * {@link ReactiveCryptographyProvider} backed by Azure Key Vault {@link CryptographyAsyncClient}s.
+ *
+ * <p>
+ * Key aliases, client reuse, refresh on failure, local RSA encryption and JFR events follow
+ * {@link KeyVaultCryptographyProvider}, only no thread waits for Key Vault - concurrent requests for a public key share one in-flight
+ * {@link KeyAsyncClient#getKey} call.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "spring.cloud.azure.keyvault.enabled", havingValue = "true")
+public class KeyVaultReactiveCryptographyProvider implements ReactiveCryptographyProvider {
+
+    private final KeyAsyncClient keyAsyncClient;
+
+    private final LoadingCache<String, CryptographyAsyncClient> cryptographyClients;
+    private final AsyncCache<String, PublicKey> publicKeys;
+
+    public KeyVaultReactiveCryptographyProvider(
+        KeyAsyncClient keyAsyncClient,
+        MeterRegistry meterRegistry,
+        @Value("${key-vault.client-refresh-interval:1h}") Duration clientRefreshInterval) {
+        this.keyAsyncClient = keyAsyncClient;
+        this.cryptographyClients = Caffeine.newBuilder()
+            .expireAfterWrite(clientRefreshInterval)
+            .recordStats()
+            .build(this::createCryptographyClient);
+        this.publicKeys = Caffeine.newBuilder()
+            .expireAfterWrite(clientRefreshInterval)
+            .recordStats()
+            .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cryptographyClients, "keyvault.async.cryptography.clients");
+        CaffeineCacheMetrics.monitor(meterRegistry, publicKeys, "keyvault.async.public.keys");
+    }
+
+    @Override
+    public Mono<byte[]> encrypt(String algorithm, byte[] plaintext, String keyAlias) {
+        LocalRsaEncryption localEncryption = LocalRsaEncryption.of(algorithm);
+        if (localEncryption != null) {
+            return record("encrypt", algorithm, keyAlias, plaintext.length, true,
+                () -> publicKey(keyAlias).map(publicKey -> localEncryption.encrypt(publicKey, plaintext, keyAlias)));
+        }
+
+        EncryptionAlgorithm encryptionAlgorithm = EncryptionAlgorithm.fromString(algorithm);
+        return record("encrypt", algorithm, keyAlias, plaintext.length, false,
+            () -> withRefresh(keyAlias, () -> cryptographyClients.get(keyAlias).encrypt(encryptionAlgorithm, plaintext).map(EncryptResult::getCipherText)));
+    }
+
+    @Override
+    public Mono<byte[]> decrypt(String algorithm, byte[] ciphertext, String keyAlias) {
+        EncryptionAlgorithm encryptionAlgorithm = EncryptionAlgorithm.fromString(algorithm);
+        return record("decrypt", algorithm, keyAlias, ciphertext.length, false,
+            () -> withRefresh(keyAlias, () -> cryptographyClients.get(keyAlias).decrypt(encryptionAlgorithm, ciphertext).map(DecryptResult::getPlainText)));
+    }
+
+    @Override
+    public Mono<byte[]> sign(String algorithm, byte[] data, String keyAlias) {
+        SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.fromString(algorithm);
+        return record("sign", algorithm, keyAlias, data.length, false,
+            () -> withRefresh(keyAlias, () -> cryptographyClients.get(keyAlias).signData(signatureAlgorithm, data).map(SignResult::getSignature)));
+    }
+
+    @Override
+    public Mono<Boolean> verify(String algorithm, byte[] data, byte[] signature, String keyAlias) {
+        SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.fromString(algorithm);
+        return record("verify", algorithm, keyAlias, data.length, false,
+            () -> withRefresh(keyAlias, () -> cryptographyClients.get(keyAlias).verifyData(signatureAlgorithm, data, signature).map(VerifyResult::isValid)));
+    }
+
+    /**
+     * Drops cached client and public key of given key alias, next operation with the key creates a new one.
+     *
+     * @param keyAlias - key name or {@code name/version}
+     */
+    public void refresh(String keyAlias) {
+        cryptographyClients.invalidate(keyAlias);
+        publicKeys.synchronous().invalidate(keyAlias);
+    }
+
+    /**
+     * @see KeyVaultCryptographyProvider#retryAfterRefresh(String, Throwable)
+     */
+    private <T> Mono<T> withRefresh(String keyAlias, Supplier<Mono<T>> call) {
+        return Mono.defer(call)
+            .onErrorResume(e -> KeyVaultCryptographyProvider.retryAfterRefresh(keyAlias, e), e -> {
+                refresh(keyAlias);
+                return Mono.defer(call);
+            });
+    }
+
+    /**
+     * Runs the operation as {@link CryptographyProviderEvent}, the event begins on subscription and is committed
+     * on the result or error signal. A cancelled operation is not recorded, only sizes of payloads are recorded.
+     */
+    private static <T> Mono<T> record(String operation, String algorithm, String keyAlias, int payloadSize, boolean local, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            CryptographyProviderEvent event = new CryptographyProviderEvent();
+            event.begin();
+            return call.get()
+                .doOnSuccess(result -> event.commit(operation, algorithm, keyAlias, payloadSize, local, true))
+                .doOnError(e -> event.commit(operation, algorithm, keyAlias, payloadSize, local, false));
+        });
+    }
+
+    private Mono<PublicKey> publicKey(String keyAlias) {
+        // the shared future must not be cancelled when one of the waiting subscribers cancels
+        return Mono.fromFuture(() -> publicKeys.get(keyAlias, (alias, executor) -> fetchPublicKey(alias).toFuture()), true);
+    }
+
+    private Mono<PublicKey> fetchPublicKey(String keyAlias) {
+        int versionSeparator = keyAlias.indexOf('/');
+        Mono<KeyVaultKey> key = versionSeparator < 0
+            ? keyAsyncClient.getKey(keyAlias)
+            : keyAsyncClient.getKey(keyAlias.substring(0, versionSeparator), keyAlias.substring(versionSeparator + 1));
+
+        return key.map(keyVaultKey -> keyVaultKey.getKey().toRsa(false).getPublic());
+    }
+
+    private CryptographyAsyncClient createCryptographyClient(String keyAlias) {
+        int versionSeparator = keyAlias.indexOf('/');
+        if (versionSeparator < 0) {
+            return keyAsyncClient.getCryptographyAsyncClient(keyAlias);
+        }
+        return keyAsyncClient.getCryptographyAsyncClient(keyAlias.substring(0, versionSeparator), keyAlias.substring(versionSeparator + 1));
+    }
+}
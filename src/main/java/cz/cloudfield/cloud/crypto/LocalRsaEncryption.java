@@ -0,0 +1,41 @@
+package cz.cloudfield.cloud.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+
+/**
+ * JCA equivalent of a Key Vault RSA encryption algorithm. RSA encryption needs only the public key,
+ * so it can be computed locally without calling Key Vault.
+ */
+record LocalRsaEncryption(String transformation, AlgorithmParameterSpec parameters) {
+
+    /**
+     * @return JCA equivalent of RSA encryption algorithm which can be computed locally, {@code null} for other algorithms
+     */
+    static LocalRsaEncryption of(String algorithm) {
+        return switch (algorithm) {
+            case "RSA-OAEP-256" -> new LocalRsaEncryption("RSA/ECB/OAEPPadding",
+                new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT));
+            case "RSA-OAEP" -> new LocalRsaEncryption("RSA/ECB/OAEPPadding",
+                new OAEPParameterSpec("SHA-1", "MGF1", MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT));
+            case "RSA1_5" -> new LocalRsaEncryption("RSA/ECB/PKCS1Padding", null);
+            default -> null;
+        };
+    }
+
+    byte[] encrypt(PublicKey publicKey, byte[] plaintext, String keyAlias) {
+        try {
+            Cipher cipher = Cipher.getInstance(transformation);
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey, parameters);
+
+            return cipher.doFinal(plaintext);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Local " + transformation + " encryption with key " + keyAlias + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package cz.cloudfield.cloud.crypto;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking variant of {@link CryptographyProvider}.
+ */
+public interface ReactiveCryptographyProvider {
+
+    Mono<byte[]> encrypt(String algorithm, byte[] plaintext, String keyAlias);
+
+    Mono<byte[]> decrypt(String algorithm, byte[] ciphertext, String keyAlias);
+
+    Mono<byte[]> sign(String algorithm, byte[] data, String keyAlias);
+
+    Mono<Boolean> verify(String algorithm, byte[] data, byte[] signature, String keyAlias);
+}
@@ -0,0 +1,71 @@
+package cz.cloudfield.cloud.crypto.hostcommand;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Commands of the binary host command protocol, codes follow the HSM convention - the response code is the command
+ * code with the second character incremented.
+ */
+enum HostCommand {
+    /**
+     * Diagnostics, empty request and response.
+     */
+    DIAGNOSTICS("NC"),
+    /**
+     * ARQC verification. Request: IMK alias, PAN, PAN sequence number (strings), ATC (2 bytes), ARQC (8 bytes),
+     * transaction data (2 bytes length, bytes). Response: verified (1 byte).
+     */
+    VERIFY_ARQC("KQ"),
+    /**
+     * PIN verification. Request: ZPK alias, PVK alias (strings), PIN block (8 bytes), PAN, PIN validation data,
+     * decimalization table (strings), PIN length (1 byte), offset (string). Response: verified (1 byte).
+     */
+    VERIFY_PIN("DA"),
+    /**
+     * PIN offset calculation. Request: ZPK alias, PVK alias (strings), PIN block (8 bytes), PAN, PIN validation data,
+     * decimalization table (strings), PIN length (1 byte). Response: offset (string).
+     */
+    CALCULATE_OFFSET("DE"),
+    /**
+     * PIN change. Request: ZPK alias, PVK alias (strings), old PIN block, new PIN block (8 bytes each), PAN,
+     * PIN validation data, decimalization table (strings), PIN length (1 byte), offset of the old PIN (string).
+     * Response: offset of the new PIN (string), error code {@link HostCommandProcessor#PIN_NOT_VERIFIED} when
+     * the old PIN does not match.
+     */
+    CHANGE_PIN("DU");
+
+    private static final HostCommand[] COMMANDS = values();
+
+    private final short code;
+    private final short responseCode;
+
+    HostCommand(String code) {
+        byte[] bytes = code.getBytes(StandardCharsets.US_ASCII);
+        this.code = (short) (bytes[0] << 8 | bytes[1]);
+        this.responseCode = responseCode(this.code);
+    }
+
+    short code() {
+        return code;
+    }
+
+    short responseCode() {
+        return responseCode;
+    }
+
+    /**
+     * @return command of given code, {@code null} when unknown
+     */
+    static HostCommand of(short code) {
+        for (HostCommand command : COMMANDS) {
+            if (command.code == code) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    static short responseCode(short code) {
+        return (short) (code + 1);
+    }
+}
@@ -0,0 +1,64 @@
+package cz.cloudfield.cloud.crypto.hostcommand;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes request frames of one connection on the executor, so blocking key loads do not stall the event loop.
+ * Pipelined requests are processed concurrently and their responses are written as they complete, clients match
+ * them by correlation ID. Reading from the connection is suspended while {@code maxInFlight} requests are processed.
+ */
+class HostCommandHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(HostCommandHandler.class);
+
+    private final HostCommandProcessor processor;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    HostCommandHandler(HostCommandProcessor processor, Executor executor, int maxInFlight) {
+        this.processor = processor;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ByteBuf request = (ByteBuf) msg;
+        if (request.readableBytes() < HostCommandProcessor.HEADER_LENGTH) {
+            request.release();
+            logger.warn("Closing connection {}, frame shorter than header.", ctx.channel().remoteAddress());
+            ctx.close();
+            return;
+        }
+
+        if (inFlight.incrementAndGet() >= maxInFlight) {
+            ctx.channel().config().setAutoRead(false);
+        }
+        executor.execute(() -> {
+            ByteBuf response;
+            try {
+                response = processor.process(request, ctx.alloc());
+            } finally {
+                request.release();
+            }
+            ctx.writeAndFlush(response).addListener(future -> {
+                if (inFlight.getAndDecrement() == maxInFlight) {
+                    ctx.channel().config().setAutoRead(true);
+                }
+            });
+        });
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.warn("Closing connection {}: {}", ctx.channel().remoteAddress(), cause.getMessage());
+        ctx.close();
+    }
+}
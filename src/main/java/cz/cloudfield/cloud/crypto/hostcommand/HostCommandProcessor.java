@@ -0,0 +1,181 @@
+package cz.cloudfield.cloud.crypto.hostcommand;
+
+import cz.cloudfield.cloud.crypto.key.KeyNotFoundException;
+import cz.cloudfield.cloud.crypto.payment.PaymentCryptoService;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * Decodes host command frames, executes them by {@link PaymentCryptoService} and encodes responses.
+ *
+ * <p>
+ * Request frame: correlation ID (4 bytes), command code (2 ASCII characters), payload.
+ * Response frame: correlation ID of the request, response code (2 ASCII characters), error code (1 byte), payload
+ * (only when the error code is {@link #OK}). Strings are encoded as 1 byte length followed by ASCII characters,
+ * integers are big-endian. Length prefix of frames is handled by the channel pipeline.
+ * </p>
+ *
+ * <p>
+ * Transaction data of ARQC verification is passed to the crypto engine as a view of the request buffer without
+ * copying, so the request buffer must not be released before {@link #process(ByteBuf, ByteBufAllocator)} returns.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "host-command.enabled", havingValue = "true")
+public class HostCommandProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(HostCommandProcessor.class);
+
+    public static final int HEADER_LENGTH = 6;
+
+    public static final byte OK = 0;
+    public static final byte INVALID_REQUEST = 1;
+    public static final byte KEY_NOT_FOUND = 2;
+    public static final byte CRYPTO_FAILURE = 3;
+    public static final byte UNKNOWN_COMMAND = 4;
+    public static final byte INTERNAL_ERROR = 5;
+    public static final byte PIN_NOT_VERIFIED = 6;
+
+    private static final int ATC_LENGTH = 2;
+    private static final int ARQC_LENGTH = 8;
+    private static final int PIN_BLOCK_LENGTH = 8;
+
+    private final PaymentCryptoService paymentCryptoService;
+
+    public HostCommandProcessor(PaymentCryptoService paymentCryptoService) {
+        this.paymentCryptoService = paymentCryptoService;
+    }
+
+    /**
+     * @param request - request frame of at least {@value #HEADER_LENGTH} bytes, not released
+     * @return response frame allocated by the allocator
+     */
+    public ByteBuf process(ByteBuf request, ByteBufAllocator allocator) {
+        int correlationId = request.readInt();
+        short code = request.readShort();
+
+        ByteBuf response = allocator.buffer(64);
+        response.writeInt(correlationId);
+        HostCommand command = HostCommand.of(code);
+        if (command == null) {
+            return response.writeShort(HostCommand.responseCode(code)).writeByte(UNKNOWN_COMMAND);
+        }
+
+        response.writeShort(command.responseCode());
+        int errorCodeIndex = response.writerIndex();
+        response.writeByte(OK);
+        try {
+            byte errorCode = execute(command, request, response);
+            if (request.isReadable()) {
+                throw new IllegalArgumentException(request.readableBytes() + " unexpected bytes after " + command);
+            }
+            if (errorCode != OK) {
+                fail(response, errorCodeIndex, errorCode);
+            }
+        } catch (KeyNotFoundException e) {
+            fail(response, errorCodeIndex, KEY_NOT_FOUND);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            fail(response, errorCodeIndex, INVALID_REQUEST);
+        } catch (GeneralSecurityException e) {
+            fail(response, errorCodeIndex, CRYPTO_FAILURE);
+        } catch (RuntimeException e) {
+            logger.error("Host command {} failed.", command, e);
+            fail(response, errorCodeIndex, INTERNAL_ERROR);
+        }
+        return response;
+    }
+
+    /**
+     * @return error code of a processed request without response payload, e.g. {@link #PIN_NOT_VERIFIED}
+     */
+    private byte execute(HostCommand command, ByteBuf request, ByteBuf response) throws GeneralSecurityException {
+        switch (command) {
+            case DIAGNOSTICS -> {
+            }
+            case VERIFY_ARQC -> {
+                String imkAlias = readString(request);
+                String pan = readString(request);
+                String panSeqNumber = readString(request);
+                byte[] atc = readBytes(request, ATC_LENGTH);
+                byte[] arqc = readBytes(request, ARQC_LENGTH);
+                int transactionDataLength = request.readUnsignedShort();
+                // view of the request buffer, no copy
+                ByteBuffer transactionData = request.nioBuffer(request.readerIndex(), transactionDataLength);
+                request.skipBytes(transactionDataLength);
+
+                boolean verified = paymentCryptoService.verifyArqc(imkAlias, pan, panSeqNumber, atc, transactionData, arqc);
+                response.writeBoolean(verified);
+            }
+            case VERIFY_PIN -> {
+                String zpkAlias = readString(request);
+                String pvkAlias = readString(request);
+                byte[] pinBlock = readBytes(request, PIN_BLOCK_LENGTH);
+                String pan = readString(request);
+                String pinValidationData = readString(request);
+                String decimalizationTable = readString(request);
+                int pinLength = request.readUnsignedByte();
+                String offset = readString(request);
+
+                boolean verified = paymentCryptoService.verifyPin(zpkAlias, pinBlock, pvkAlias, pan, pinValidationData, decimalizationTable, pinLength, offset);
+                response.writeBoolean(verified);
+            }
+            case CALCULATE_OFFSET -> {
+                String zpkAlias = readString(request);
+                String pvkAlias = readString(request);
+                byte[] pinBlock = readBytes(request, PIN_BLOCK_LENGTH);
+                String pan = readString(request);
+                String pinValidationData = readString(request);
+                String decimalizationTable = readString(request);
+                int pinLength = request.readUnsignedByte();
+
+                String offset = paymentCryptoService.calculateOffset(zpkAlias, pinBlock, pvkAlias, pan, pinValidationData, decimalizationTable, pinLength);
+                writeString(response, offset);
+            }
+            case CHANGE_PIN -> {
+                String zpkAlias = readString(request);
+                String pvkAlias = readString(request);
+                byte[] oldPinBlock = readBytes(request, PIN_BLOCK_LENGTH);
+                byte[] newPinBlock = readBytes(request, PIN_BLOCK_LENGTH);
+                String pan = readString(request);
+                String pinValidationData = readString(request);
+                String decimalizationTable = readString(request);
+                int pinLength = request.readUnsignedByte();
+                String offset = readString(request);
+
+                String newOffset = paymentCryptoService.changePin(zpkAlias, oldPinBlock, newPinBlock, pvkAlias, pan, pinValidationData, decimalizationTable, pinLength, offset);
+                if (newOffset == null) {
+                    return PIN_NOT_VERIFIED;
+                }
+                writeString(response, newOffset);
+            }
+        }
+        return OK;
+    }
+
+    private static void fail(ByteBuf response, int errorCodeIndex, byte errorCode) {
+        response.writerIndex(errorCodeIndex).writeByte(errorCode);
+    }
+
+    private static String readString(ByteBuf buffer) {
+        int length = buffer.readUnsignedByte();
+        return buffer.readCharSequence(length, StandardCharsets.US_ASCII).toString();
+    }
+
+    private static byte[] readBytes(ByteBuf buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
+
+    static void writeString(ByteBuf buffer, String value) {
+        buffer.writeByte(value.length());
+        buffer.writeCharSequence(value, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,22 @@
+package cz.cloudfield.cloud.crypto.hostcommand;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param enabled        - start the binary TCP listener
+ * @param port           - listening port, 0 means a random free port
+ * @param ioThreads      - number of event loop threads, 0 means Netty default (2 * available processors)
+ * @param maxFrameLength - maximum length of a request frame without the length prefix
+ * @param maxInFlight    - maximum number of pipelined requests processed at a time per connection, reading from
+ *                       the connection is suspended above it
+ */
+@ConfigurationProperties("host-command")
+public record HostCommandProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("1500") int port,
+    @DefaultValue("0") int ioThreads,
+    @DefaultValue("8192") int maxFrameLength,
+    @DefaultValue("256") int maxInFlight
+) {
+}
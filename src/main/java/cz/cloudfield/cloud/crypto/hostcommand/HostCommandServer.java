@@ -0,0 +1,97 @@
+package cz.cloudfield.cloud.crypto.hostcommand;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Binary TCP listener of host commands, an alternative to the REST API for switches talking to HSMs. Frames are
+ * prefixed by 2 byte big-endian length, see {@link HostCommandProcessor} for their content.
+ *
+ * <p>
+ * Frames are decoded from pooled direct buffers without copying and executed on virtual threads.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "host-command.enabled", havingValue = "true")
+public class HostCommandServer implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(HostCommandServer.class);
+
+    private static final int LENGTH_FIELD_LENGTH = 2;
+
+    private final HostCommandProcessor processor;
+    private final HostCommandProperties properties;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private ExecutorService executor;
+    private Channel serverChannel;
+
+    public HostCommandServer(HostCommandProcessor processor, HostCommandProperties properties) {
+        this.processor = processor;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup(properties.ioThreads());
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        ServerBootstrap bootstrap = new ServerBootstrap()
+            .group(bossGroup, workerGroup)
+            .channel(NioServerSocketChannel.class)
+            .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+            .childOption(ChannelOption.TCP_NODELAY, true)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel channel) {
+                    channel.pipeline()
+                        .addLast(new LengthFieldBasedFrameDecoder(properties.maxFrameLength(), 0, LENGTH_FIELD_LENGTH, 0, LENGTH_FIELD_LENGTH))
+                        .addLast(new LengthFieldPrepender(LENGTH_FIELD_LENGTH))
+                        .addLast(new HostCommandHandler(processor, executor, properties.maxInFlight()));
+                }
+            });
+
+        serverChannel = bootstrap.bind(properties.port()).syncUninterruptibly().channel();
+        logger.info("Host command listener started on port {}.", getPort());
+    }
+
+    @Override
+    public void stop() {
+        serverChannel.close().syncUninterruptibly();
+        bossGroup.shutdownGracefully().syncUninterruptibly();
+        workerGroup.shutdownGracefully().syncUninterruptibly();
+        executor.close();
+        serverChannel = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return serverChannel != null;
+    }
+
+    /**
+     * @return bound port, useful when {@link HostCommandProperties#port()} is 0
+     */
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+}
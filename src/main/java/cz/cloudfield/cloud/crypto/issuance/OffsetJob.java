@@ -0,0 +1,279 @@
+package cz.cloudfield.cloud.crypto.issuance;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.key.KeyManager;
+import cz.cloudfield.cloud.crypto.utils.PinOffsetHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Calculates PIN offsets of all records of one input file. The input is read by chunks of complete lines, records
+ * of a chunk are processed in parallel on the batch pool and their results appended to the output file in input
+ * order. After every chunk the output is forced to disk and a {@link OffsetJobCheckpoint} is written, so memory use
+ * depends on the chunk size only and a job interrupted by a failure or restart continues after the last chunk.
+ *
+ * <p>
+ * Input lines are {@code PAN,PIN block,PIN validation data} with the ISO format 0 PIN block encrypted by ZPK in hex,
+ * empty lines are skipped. Output lines are {@code PAN,offset,} or {@code PAN,,error} when the record failed.
+ * </p>
+ */
+final class OffsetJob implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(OffsetJob.class);
+
+    private static final String OPERATION = "offset-job";
+    private static final String KEY_VERSION = "01";
+    private static final int PIN_BLOCK_LENGTH = 8;
+    private static final char SEPARATOR = ',';
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final String id;
+    private final OffsetJobRequestDTO request;
+    private final Path inputFile;
+    private final Path outputFile;
+    private final KeyManager keyManager;
+    private final ForkJoinPool pool;
+    private final CryptoMetrics metrics;
+    private final int chunkSize;
+
+    // written by the job thread only, read by status requests
+    private volatile OffsetJobStatusDTO.State state = OffsetJobStatusDTO.State.RUNNING;
+    private volatile long records;
+    private volatile long failedRecords;
+    private volatile long processedBytes;
+    private volatile long inputBytes;
+    private volatile Instant started;
+    private volatile Instant finished;
+    private volatile String error;
+
+    // reused by all chunks
+    private int[] lineStarts = new int[1024];
+    private int[] lineEnds = new int[1024];
+    private ByteBuffer results = ByteBuffer.allocate(0);
+
+    OffsetJob(String id, OffsetJobRequestDTO request, Path inputFile, Path outputFile, KeyManager keyManager, ForkJoinPool pool,
+              CryptoMetrics metrics, int chunkSize) {
+        this.id = id;
+        this.request = request;
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.keyManager = keyManager;
+        this.pool = pool;
+        this.metrics = metrics;
+        this.chunkSize = chunkSize;
+    }
+
+    String id() {
+        return id;
+    }
+
+    OffsetJobStatusDTO status() {
+        return new OffsetJobStatusDTO(id, state, request.inputFile(), request.outputFile(), records, failedRecords, processedBytes,
+            inputBytes, started, finished, error);
+    }
+
+    @Override
+    public void run() {
+        started = Instant.now();
+        Path checkpointFile = OffsetJobCheckpoint.path(outputFile);
+        try (FileChannel input = FileChannel.open(inputFile, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            inputBytes = input.size();
+            long inputPosition = 0;
+            long outputPosition = 0;
+
+            Optional<OffsetJobCheckpoint> checkpoint = OffsetJobCheckpoint.read(checkpointFile);
+            if (checkpoint.isPresent()) {
+                OffsetJobCheckpoint resumed = checkpoint.get();
+                if (!resumed.inputFile().equals(inputFile.toString()) || resumed.inputBytes() != inputBytes) {
+                    throw new IllegalStateException("Checkpoint of " + request.outputFile() + " belongs to another input, delete it to start over");
+                }
+                inputPosition = resumed.inputPosition();
+                outputPosition = resumed.outputPosition();
+                records = resumed.records();
+                failedRecords = resumed.failedRecords();
+                logger.info("Offset job {} resumes {} at byte {} of {}.", id, request.inputFile(), inputPosition, inputBytes);
+            }
+            // drop output written after the checkpoint
+            output.truncate(outputPosition);
+            processedBytes = inputPosition;
+
+            ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+            while (inputPosition < inputBytes) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Offset job interrupted");
+                }
+
+                int length = read(input, chunk, inputPosition);
+                if (length == 0) {
+                    throw new IllegalStateException("Input file " + request.inputFile() + " was truncated");
+                }
+                int end = inputPosition + length == inputBytes ? length : lastLineEnd(chunk.array(), length);
+                if (end == 0) {
+                    throw new IllegalStateException("Record at byte " + inputPosition + " is longer than " + chunkSize + " bytes");
+                }
+
+                ByteBuffer chunkResults = processChunk(chunk.array(), end);
+                while (chunkResults.hasRemaining()) {
+                    outputPosition += output.write(chunkResults, outputPosition);
+                }
+                output.force(false);
+
+                inputPosition += end;
+                new OffsetJobCheckpoint(inputFile.toString(), inputBytes, inputPosition, outputPosition, records, failedRecords)
+                    .write(checkpointFile);
+                processedBytes = inputPosition;
+            }
+
+            Files.deleteIfExists(checkpointFile);
+            finished = Instant.now();
+            state = OffsetJobStatusDTO.State.COMPLETED;
+            logger.info("Offset job {} calculated {} offsets ({} failed) of {} in {}.", id, records, failedRecords, request.inputFile(),
+                Duration.between(started, finished));
+        } catch (IOException | RuntimeException e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            finished = Instant.now();
+            state = OffsetJobStatusDTO.State.FAILED;
+            logger.error("Offset job {} failed at byte {} of {}.", id, processedBytes, request.inputFile(), e);
+        }
+    }
+
+    private ByteBuffer processChunk(byte[] data, int length) {
+        int lineCount = splitLines(data, length);
+        int[] starts = lineStarts;
+        int[] ends = lineEnds;
+
+        // resolved per chunk, so a long job does not keep using a key the key cache already dropped
+        PinOffsetHelper pinOffsetHelper = new PinOffsetHelper(keyManager.getKey(request.pvkAlias(), KEY_VERSION),
+            keyManager.getKey(request.zpkAlias(), KEY_VERSION), metrics.pinStages(OPERATION, request.pvkAlias(), request.zpkAlias()));
+
+        byte[][] lineResults = new byte[lineCount][];
+        LongAdder failures = new LongAdder();
+        pool.submit(() -> IntStream.range(0, lineCount).parallel()
+            .forEach(i -> lineResults[i] = processRecord(pinOffsetHelper, data, starts[i], ends[i], failures))).join();
+
+        int size = 0;
+        for (byte[] lineResult : lineResults) {
+            size += lineResult.length;
+        }
+        if (results.capacity() < size) {
+            results = ByteBuffer.allocate(Math.max(size, 2 * results.capacity()));
+        }
+        results.clear();
+        for (byte[] lineResult : lineResults) {
+            results.put(lineResult);
+        }
+
+        records += lineCount;
+        failedRecords += failures.sum();
+        return results.flip();
+    }
+
+    private byte[] processRecord(PinOffsetHelper pinOffsetHelper, byte[] data, int start, int end, LongAdder failures) {
+        String record = new String(data, start, end - start, StandardCharsets.US_ASCII);
+        int panEnd = record.indexOf(SEPARATOR);
+        int pinBlockEnd = panEnd < 0 ? -1 : record.indexOf(SEPARATOR, panEnd + 1);
+        String pan = panEnd < 0 ? "" : record.substring(0, panEnd);
+
+        String result;
+        try {
+            if (pinBlockEnd < 0) {
+                throw new IllegalArgumentException("Record must have 3 fields");
+            }
+            byte[] pinBlock = HexFormat.of().parseHex(record, panEnd + 1, pinBlockEnd);
+            if (pinBlock.length != PIN_BLOCK_LENGTH) {
+                throw new IllegalArgumentException("PIN block must have " + PIN_BLOCK_LENGTH + " bytes");
+            }
+            String offset = pinOffsetHelper.calculateOffset(pinBlock, pan, request.decimalizationTable(), record.substring(pinBlockEnd + 1),
+                request.pinLength());
+            result = pan + SEPARATOR + offset + SEPARATOR;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            failures.increment();
+            result = pan + SEPARATOR + SEPARATOR + errorMessage(e);
+        }
+        return (result + '\n').getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Finds non-empty lines of the chunk, their bounds are stored to {@link #lineStarts} and {@link #lineEnds}.
+     *
+     * @return number of lines
+     */
+    private int splitLines(byte[] data, int length) {
+        int count = 0;
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && data[end] != LINE_FEED) {
+                end++;
+            }
+            int next = end + 1;
+            if (end > start && data[end - 1] == CARRIAGE_RETURN) {
+                end--;
+            }
+
+            if (end > start) {
+                if (count == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, count * 2);
+                    lineEnds = Arrays.copyOf(lineEnds, count * 2);
+                }
+                lineStarts[count] = start;
+                lineEnds[count] = end;
+                count++;
+            }
+            start = next;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the chunk from the position, at most up to the input size the job started with.
+     *
+     * @return number of bytes read
+     */
+    private int read(FileChannel input, ByteBuffer chunk, long position) throws IOException {
+        chunk.clear();
+        chunk.limit((int) Math.min(chunk.capacity(), inputBytes - position));
+        while (chunk.hasRemaining()) {
+            if (input.read(chunk, position + chunk.position()) < 0) {
+                break;
+            }
+        }
+        return chunk.position();
+    }
+
+    /**
+     * @return length of the chunk up to and including its last line feed, 0 when there is none
+     */
+    private static int lastLineEnd(byte[] data, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == LINE_FEED) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static String errorMessage(Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        return message.replace(SEPARATOR, ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+}
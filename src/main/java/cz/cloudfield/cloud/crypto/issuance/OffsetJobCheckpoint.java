@@ -0,0 +1,80 @@
+package cz.cloudfield.cloud.crypto.issuance;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Progress of an offset job, written after every chunk of the output file is flushed to disk.
+ *
+ * @param inputFile      - absolute path of the input file
+ * @param inputBytes     - size of the input file, a resumed job fails when the input changed
+ * @param inputPosition  - input is processed up to this position
+ * @param outputPosition - output is valid up to this position, anything after it is overwritten on resume
+ */
+record OffsetJobCheckpoint(
+    String inputFile,
+    long inputBytes,
+    long inputPosition,
+    long outputPosition,
+    long records,
+    long failedRecords
+) {
+
+    static Path path(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + ".checkpoint");
+    }
+
+    static Optional<OffsetJobCheckpoint> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        return Optional.of(new OffsetJobCheckpoint(
+            properties.getProperty("input-file"),
+            Long.parseLong(properties.getProperty("input-bytes")),
+            Long.parseLong(properties.getProperty("input-position")),
+            Long.parseLong(properties.getProperty("output-position")),
+            Long.parseLong(properties.getProperty("records")),
+            Long.parseLong(properties.getProperty("failed-records"))));
+    }
+
+    /**
+     * Replaces the checkpoint atomically, a crash leaves either the previous or this checkpoint. The temporary file
+     * is forced to disk before the move, otherwise the rename could be persisted before its content.
+     */
+    void write(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("input-file", inputFile);
+        properties.setProperty("input-bytes", Long.toString(inputBytes));
+        properties.setProperty("input-position", Long.toString(inputPosition));
+        properties.setProperty("output-position", Long.toString(outputPosition));
+        properties.setProperty("records", Long.toString(records));
+        properties.setProperty("failed-records", Long.toString(failedRecords));
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        StringWriter writer = new StringWriter();
+        properties.store(writer, null);
+        ByteBuffer content = StandardCharsets.UTF_8.encode(writer.toString());
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
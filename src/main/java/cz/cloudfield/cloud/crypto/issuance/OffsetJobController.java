@@ -0,0 +1,34 @@
+package cz.cloudfield.cloud.crypto.issuance;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/payment-crypto/offset-jobs")
+public class OffsetJobController {
+
+    private final OffsetJobService offsetJobService;
+
+    public OffsetJobController(OffsetJobService offsetJobService) {
+        this.offsetJobService = offsetJobService;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public OffsetJobStatusDTO start(@RequestBody OffsetJobRequestDTO request) {
+        return offsetJobService.start(request);
+    }
+
+    @GetMapping
+    public List<OffsetJobStatusDTO> statuses() {
+        return offsetJobService.statuses();
+    }
+
+    @GetMapping("/{id}")
+    public OffsetJobStatusDTO status(@PathVariable String id) {
+        return offsetJobService.status(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+}
@@ -0,0 +1,18 @@
+package cz.cloudfield.cloud.crypto.issuance;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+/**
+ * @param directory - directory with input and output files of offset jobs, job files must not be outside of it
+ * @param chunkSize - size of the input read and checkpointed at once, also the maximum length of one record
+ */
+@ConfigurationProperties("payment-crypto.offset-job")
+public record OffsetJobProperties(
+    @DefaultValue("issuance") Path directory,
+    @DefaultValue("4MB") DataSize chunkSize
+) {
+}
@@ -0,0 +1,17 @@
+package cz.cloudfield.cloud.crypto.issuance;
+
+/**
+ * @param inputFile  - file with {@code PAN,PIN block,PIN validation data} records, relative to
+ *                   {@link OffsetJobProperties#directory()}
+ * @param outputFile - file the {@code PAN,offset,error} results are written to, a job writing the same file
+ *                   is resumed from its checkpoint
+ */
+public record OffsetJobRequestDTO(
+    String inputFile,
+    String outputFile,
+    String zpkAlias,
+    String pvkAlias,
+    String decimalizationTable,
+    int pinLength
+) {
+}
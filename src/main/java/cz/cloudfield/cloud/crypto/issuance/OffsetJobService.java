@@ -0,0 +1,116 @@
+package cz.cloudfield.cloud.crypto.issuance;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.key.KeyManager;
+import cz.cloudfield.cloud.crypto.payment.PaymentBatchConfiguration;
+import cz.cloudfield.cloud.crypto.utils.PinOffsetHelper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs {@link OffsetJob}s in the background. Offsets are calculated on the payment crypto batch pool, jobs only
+ * read, wait and write on virtual threads. Jobs are kept in memory, their checkpoints survive a restart - starting
+ * a job with the same output file resumes it.
+ */
+@Service
+public class OffsetJobService {
+
+    private static final String KEY_VERSION = "01";
+
+    private final KeyManager keyManager;
+    private final ForkJoinPool batchPool;
+    private final CryptoMetrics metrics;
+    private final Path directory;
+    private final int chunkSize;
+
+    private final Map<String, OffsetJob> jobs = new ConcurrentHashMap<>();
+    private final Map<Path, OffsetJob> runningJobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public OffsetJobService(
+        KeyManager keyManager,
+        @Qualifier(PaymentBatchConfiguration.BATCH_POOL) ForkJoinPool batchPool,
+        CryptoMetrics metrics,
+        OffsetJobProperties properties) {
+        this.keyManager = keyManager;
+        this.batchPool = batchPool;
+        this.metrics = metrics;
+        this.directory = properties.directory().toAbsolutePath().normalize();
+        this.chunkSize = Math.toIntExact(properties.chunkSize().toBytes());
+    }
+
+    /**
+     * Validates the request and starts the job, keys are resolved before it starts so a missing key fails the request.
+     *
+     * @return status of the started job
+     */
+    public OffsetJobStatusDTO start(OffsetJobRequestDTO request) {
+        Path inputFile = resolve(request.inputFile());
+        Path outputFile = resolve(request.outputFile());
+        if (!Files.isRegularFile(inputFile)) {
+            throw new IllegalArgumentException("Input file " + request.inputFile() + " does not exist");
+        }
+        if (inputFile.equals(outputFile)) {
+            throw new IllegalArgumentException("Output file must differ from input file");
+        }
+        if (request.pinLength() < PinOffsetHelper.MIN_PIN_LENGTH || request.pinLength() > PinOffsetHelper.MAX_PIN_LENGTH) {
+            throw new IllegalArgumentException("PIN length must be between " + PinOffsetHelper.MIN_PIN_LENGTH + " and " + PinOffsetHelper.MAX_PIN_LENGTH);
+        }
+        keyManager.getKey(request.pvkAlias(), KEY_VERSION);
+        keyManager.getKey(request.zpkAlias(), KEY_VERSION);
+
+        OffsetJob job = new OffsetJob(UUID.randomUUID().toString(), request, inputFile, outputFile, keyManager, batchPool, metrics, chunkSize);
+        if (runningJobs.putIfAbsent(outputFile, job) != null) {
+            throw new IllegalStateException("Output file " + request.outputFile() + " is written by another job");
+        }
+        jobs.put(job.id(), job);
+        executor.execute(() -> {
+            try {
+                job.run();
+            } finally {
+                runningJobs.remove(outputFile, job);
+            }
+        });
+
+        return job.status();
+    }
+
+    public Optional<OffsetJobStatusDTO> status(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(OffsetJob::status);
+    }
+
+    public List<OffsetJobStatusDTO> statuses() {
+        return jobs.values().stream().map(OffsetJob::status).toList();
+    }
+
+    /**
+     * Running jobs stop after their current chunk and continue from its checkpoint when started again.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Path resolve(String file) {
+        if (file == null || file.isBlank()) {
+            throw new IllegalArgumentException("Input and output file must be set");
+        }
+        Path path = directory.resolve(file).normalize();
+        if (!path.startsWith(directory)) {
+            throw new IllegalArgumentException("File " + file + " is outside of the offset job directory");
+        }
+        return path;
+    }
+}
@@ -0,0 +1,28 @@
+package cz.cloudfield.cloud.crypto.issuance;
+
+import java.time.Instant;
+
+/**
+ * @param records        - processed records including failed ones
+ * @param processedBytes - processed bytes of the input file
+ * @param inputBytes     - size of the input file, known once the job started reading it
+ * @param error          - reason of the {@link State#FAILED} state
+ */
+public record OffsetJobStatusDTO(
+    String id,
+    State state,
+    String inputFile,
+    String outputFile,
+    long records,
+    long failedRecords,
+    long processedBytes,
+    long inputBytes,
+    Instant started,
+    Instant finished,
+    String error
+) {
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+}
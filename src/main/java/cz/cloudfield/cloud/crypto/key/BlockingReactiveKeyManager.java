@@ -0,0 +1,29 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.crypto.SecretKey;
+
+/**
+ * {@link ReactiveKeyManager} used without Key Vault, it calls the blocking {@link KeyManager}
+ * on the bounded elastic scheduler.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.cloud.azure.keyvault.enabled", havingValue = "false", matchIfMissing = true)
+public class BlockingReactiveKeyManager implements ReactiveKeyManager {
+
+    private final KeyManager keyManager;
+
+    public BlockingReactiveKeyManager(KeyManager keyManager) {
+        this.keyManager = keyManager;
+    }
+
+    @Override
+    public Mono<SecretKey> getKey(String alias, String keyVersion) {
+        return Mono.fromCallable(() -> keyManager.getKey(alias, keyVersion))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,55 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+
+/**
+ * Unwrapped key material held by {@link UnwrappedKeyCache}. Unlike {@link javax.crypto.spec.SecretKeySpec}
+ * it can be destroyed, which overwrites the key bytes with zeros.
+ */
+public final class CachedSecretKey implements SecretKey {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] key;
+    private final String algorithm;
+    private volatile boolean destroyed;
+
+    /**
+     * @param key       - raw key material, the array is owned by this instance and zeroized by {@link #destroy()}
+     * @param algorithm - key algorithm, e.g. AES or DESede
+     */
+    CachedSecretKey(byte[] key, String algorithm) {
+        this.key = key;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    @Override
+    public byte[] getEncoded() {
+        if (destroyed) {
+            throw new IllegalStateException("Key has been destroyed");
+        }
+        return key.clone();
+    }
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+        Arrays.fill(key, (byte) 0);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+}
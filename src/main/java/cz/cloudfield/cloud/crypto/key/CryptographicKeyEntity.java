@@ -12,16 +12,18 @@ import java.time.LocalDateTime;
 @EntityListeners(AuditingEntityListener.class)
 public class CryptographicKeyEntity {
 
+    // allocated in blocks, IDENTITY would disable JDBC batching of inserts
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cryptographic_key_seq")
+    @SequenceGenerator(name = "cryptographic_key_seq", sequenceName = "cryptographic_key_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "key_alias")
     private String keyAlias;
 
     @Column(name = "key_data")
-    private String keyData;
+    private byte[] keyData;
 
     @Column(name = "key_algorithm")
     private String keyAlgorithm;
@@ -32,6 +34,9 @@ public class CryptographicKeyEntity {
     @Column(name = "key_version")
     private String keyVersion;
 
+    @Column(name = "kek_version")
+    private Integer kekVersion;
+
     @Column(name = "created")
     @CreatedDate
     private LocalDateTime created;
@@ -56,11 +61,11 @@ public class CryptographicKeyEntity {
         this.keyAlias = keyAlias;
     }
 
-    public String getKeyData() {
+    public byte[] getKeyData() {
         return keyData;
     }
 
-    public void setKeyData(String keyData) {
+    public void setKeyData(byte[] keyData) {
         this.keyData = keyData;
     }
 
@@ -88,6 +93,14 @@ public class CryptographicKeyEntity {
         this.keyVersion = keyVersion;
     }
 
+    public Integer getKekVersion() {
+        return kekVersion;
+    }
+
+    public void setKekVersion(Integer kekVersion) {
+        this.kekVersion = kekVersion;
+    }
+
     public LocalDateTime getCreated() {
         return created;
     }
@@ -4,14 +4,16 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
 public interface CryptographicKeyRepository extends JpaRepository<CryptographicKeyEntity, Long> {
 
-    Optional<CryptographicKeyEntity> findByKeyAliasAndKeyVersion(String keyAlias, String keyVersion);
+    List<CryptographicKeyEntity> findByKekVersionIsNullOrKekVersionNot(Integer kekVersion);
 
     @Query("from CryptographicKeyEntity")
     List<CryptographicKey> findAllKeys();
+
+    List<CryptographicKey> findByKeyAliasIn(Collection<String> keyAliases);
 }
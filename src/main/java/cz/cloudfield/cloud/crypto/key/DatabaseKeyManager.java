@@ -1,57 +1,172 @@
 package cz.cloudfield.cloud.crypto.key;
 
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
 import cz.cloudfield.cloud.crypto.CryptographyProvider;
+import cz.cloudfield.cloud.crypto.key.KeyEncryptionKeyManager.WrappedKey;
+import cz.cloudfield.cloud.crypto.utils.CryptoStage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
-import java.util.HexFormat;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Keys stored in the database, wrapped by {@link KeyEncryptionKeyManager}. Keys created before envelope encryption
+ * are wrapped directly by the master key, {@link #rewrapKeys()} migrates them. Key cache misses read the key by
+ * {@link KeyLoader}, JPA is used to create and migrate keys.
+ */
 @Component
 public class DatabaseKeyManager implements KeyManager {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseKeyManager.class);
+
+    private static final String GET_KEY = "get-key";
 
     private final CryptographicKeyRepository cryptographicKeyRepository;
+    private final KeyLoader keyLoader;
     private final CryptographyProvider cryptographyProvider;
+    private final KeyEncryptionKeyManager keyEncryptionKeyManager;
+    private final UnwrappedKeyCache unwrappedKeyCache;
+    private final CryptoMetrics metrics;
 
     private final String masterKeyAlias;
 
     public DatabaseKeyManager(
         CryptographicKeyRepository cryptographicKeyRepository,
+        KeyLoader keyLoader,
         CryptographyProvider cryptographyProvider,
+        KeyEncryptionKeyManager keyEncryptionKeyManager,
+        UnwrappedKeyCache unwrappedKeyCache,
+        CryptoMetrics metrics,
         @Value("${master-key-alias}") String masterKeyAlias) {
         this.cryptographicKeyRepository = cryptographicKeyRepository;
+        this.keyLoader = keyLoader;
         this.cryptographyProvider = cryptographyProvider;
+        this.keyEncryptionKeyManager = keyEncryptionKeyManager;
+        this.unwrappedKeyCache = unwrappedKeyCache;
+        this.metrics = metrics;
         this.masterKeyAlias = masterKeyAlias;
     }
 
     @Override
     public SecretKey getKey(String alias, String keyVersion) {
-        CryptographicKeyEntity key = cryptographicKeyRepository.findByKeyAliasAndKeyVersion(alias, keyVersion)
-            .orElseThrow(() -> new IllegalArgumentException("Key not found: " + alias));
+        return unwrappedKeyCache.get(alias, keyVersion, () -> unwrapKey(alias, keyVersion));
+    }
+
+    /**
+     * Reads the key type from the database, the key is not unwrapped.
+     */
+    @Override
+    public String getKeyType(String alias, String keyVersion) {
+        return keyLoader.findKey(alias, keyVersion)
+            .map(StoredKey::keyType)
+            .orElseThrow(() -> new KeyNotFoundException(alias));
+    }
+
+    private CachedSecretKey unwrapKey(String alias, String keyVersion) {
+        long start = System.nanoTime();
+        StoredKey key = keyLoader.loadKey(alias, keyVersion)
+            .orElseThrow(() -> new KeyNotFoundException(alias));
+        long found = System.nanoTime();
+
+        byte[] keyBytes = unwrapKeyData(key.kekVersion(), key.keyData(), alias, keyVersion);
+        long unwrapped = System.nanoTime();
 
-        byte[] keyBytes = cryptographyProvider.decrypt("RSA-OAEP-256", HexFormat.of().parseHex(key.getKeyData()), masterKeyAlias);
+        metrics.admitAlias(alias);
+        metrics.record(GET_KEY, CryptoStage.KEY_LOOKUP, alias, found - start);
+        metrics.record(GET_KEY, CryptoStage.KEY_UNWRAP, alias, unwrapped - found);
 
-        return new SecretKeySpec(keyBytes, key.getKeyAlgorithm());
+        return new CachedSecretKey(keyBytes, key.keyAlgorithm());
+    }
+
+    private byte[] unwrapKeyData(Integer kekVersion, byte[] keyData, String alias, String keyVersion) {
+        if (kekVersion == null) {
+            // wrapped directly by the master key
+            return cryptographyProvider.decrypt("RSA-OAEP-256", keyData, masterKeyAlias);
+        }
+        return keyEncryptionKeyManager.unwrap(kekVersion, keyData, alias, keyVersion);
+    }
+
+    private void wrapKeyData(CryptographicKeyEntity key, byte[] keyData) {
+        WrappedKey wrappedKey = keyEncryptionKeyManager.wrap(keyData, key.getKeyAlias(), key.getKeyVersion());
+
+        key.setKeyData(wrappedKey.data());
+        key.setKekVersion(wrappedKey.kekVersion());
     }
 
     @Override
     public void createKey(String alias, String keyVersion, String keyAlgorithm, String keyType, byte[] keyData) {
-        byte[] encryptedKeyData = cryptographyProvider.encrypt("RSA-OAEP-256", keyData, masterKeyAlias);
+        cryptographicKeyRepository.save(newKey(alias, keyVersion, keyAlgorithm, keyType, keyData));
+
+        unwrappedKeyCache.invalidate(alias, keyVersion);
+    }
 
+    /**
+     * Wraps keys locally under the current KEK and stores them in one transaction, inserts are sent in JDBC batches
+     * of {@code hibernate.jdbc.batch_size}.
+     */
+    @Override
+    public void createKeys(List<CreateKeyRequestDTO> keys) {
+        List<CryptographicKeyEntity> entities = keys.stream()
+            .map(key -> newKey(key.keyAlias(), key.keyVersion(), key.keyAlgorithm(), key.keyType(), key.keyData()))
+            .toList();
+        cryptographicKeyRepository.saveAll(entities);
+
+        keys.forEach(key -> unwrappedKeyCache.invalidate(key.keyAlias(), key.keyVersion()));
+    }
+
+    private CryptographicKeyEntity newKey(String alias, String keyVersion, String keyAlgorithm, String keyType, byte[] keyData) {
         CryptographicKeyEntity key = new CryptographicKeyEntity();
         key.setKeyAlias(alias);
-        key.setKeyData(HexFormat.of().withUpperCase().formatHex(encryptedKeyData));
         key.setKeyAlgorithm(keyAlgorithm);
         key.setKeyType(keyType);
         key.setKeyVersion(keyVersion);
+        wrapKeyData(key, keyData);
 
-        cryptographicKeyRepository.save(key);
+        return key;
     }
 
     @Override
     public List<CryptographicKey> listKeys() {
         return cryptographicKeyRepository.findAllKeys();
     }
+
+    @Override
+    public List<String> findMostLoadedAliases(String keyVersion, int limit) {
+        return keyLoader.findMostLoadedAliases(keyVersion, limit);
+    }
+
+    @Override
+    public List<CryptographicKey> findKeys(Collection<String> aliases) {
+        return cryptographicKeyRepository.findByKeyAliasIn(aliases);
+    }
+
+    /**
+     * Re-wraps keys wrapped directly by the master key or by a previous KEK version under the current KEK.
+     * Key material does not change, so cached keys stay valid. Keys are read and saved in one transaction.
+     *
+     * @return number of re-wrapped keys
+     */
+    @Transactional
+    public int rewrapKeys() {
+        int kekVersion = keyEncryptionKeyManager.currentVersion();
+
+        List<CryptographicKeyEntity> keys = cryptographicKeyRepository.findByKekVersionIsNullOrKekVersionNot(kekVersion);
+        for (CryptographicKeyEntity key : keys) {
+            byte[] keyData = unwrapKeyData(key.getKekVersion(), key.getKeyData(), key.getKeyAlias(), key.getKeyVersion());
+            try {
+                wrapKeyData(key, keyData);
+            } finally {
+                Arrays.fill(keyData, (byte) 0);
+            }
+        }
+        cryptographicKeyRepository.saveAll(keys);
+
+        logger.info("Re-wrapped {} keys under key encryption key version {}.", keys.size(), kekVersion);
+        return keys.size();
+    }
 }
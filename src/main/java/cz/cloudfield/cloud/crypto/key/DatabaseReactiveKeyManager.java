@@ -0,0 +1,88 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.ReactiveCryptographyProvider;
+import cz.cloudfield.cloud.crypto.utils.CryptoStage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.crypto.SecretKey;
+
+/**
+ * {@link ReactiveKeyManager} sharing {@link UnwrappedKeyCache} with {@link DatabaseKeyManager}. Cached keys are
+ * returned immediately. On a miss the key is read by {@link KeyLoader} on the bounded elastic scheduler and unwrapped
+ * locally by {@link KeyEncryptionKeyManager}, keys wrapped directly by the master key are unwrapped by
+ * {@link ReactiveCryptographyProvider} without blocking any thread. Lookup and unwrap stages are recorded
+ * like in {@link DatabaseKeyManager}.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.cloud.azure.keyvault.enabled", havingValue = "true")
+public class DatabaseReactiveKeyManager implements ReactiveKeyManager {
+
+    private static final String GET_KEY = "get-key";
+
+    private final KeyLoader keyLoader;
+    private final ReactiveCryptographyProvider cryptographyProvider;
+    private final KeyEncryptionKeyManager keyEncryptionKeyManager;
+    private final UnwrappedKeyCache unwrappedKeyCache;
+    private final CryptoMetrics metrics;
+
+    private final String masterKeyAlias;
+
+    public DatabaseReactiveKeyManager(
+        KeyLoader keyLoader,
+        ReactiveCryptographyProvider cryptographyProvider,
+        KeyEncryptionKeyManager keyEncryptionKeyManager,
+        UnwrappedKeyCache unwrappedKeyCache,
+        CryptoMetrics metrics,
+        @Value("${master-key-alias}") String masterKeyAlias) {
+        this.keyLoader = keyLoader;
+        this.cryptographyProvider = cryptographyProvider;
+        this.keyEncryptionKeyManager = keyEncryptionKeyManager;
+        this.unwrappedKeyCache = unwrappedKeyCache;
+        this.metrics = metrics;
+        this.masterKeyAlias = masterKeyAlias;
+    }
+
+    @Override
+    public Mono<SecretKey> getKey(String alias, String keyVersion) {
+        // the shared future must not be cancelled when one of the waiting subscribers cancels
+        return Mono.fromFuture(() -> unwrappedKeyCache.getAsync(alias, keyVersion, () -> unwrapKey(alias, keyVersion).toFuture()), true);
+    }
+
+    private Mono<CachedSecretKey> unwrapKey(String alias, String keyVersion) {
+        return Mono.fromCallable(() -> findKey(alias, keyVersion))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(timed -> unwrapKeyData(timed.key())
+                .map(keyBytes -> {
+                    long unwrapped = System.nanoTime();
+                    metrics.admitAlias(alias);
+                    metrics.record(GET_KEY, CryptoStage.KEY_LOOKUP, alias, timed.found() - timed.start());
+                    metrics.record(GET_KEY, CryptoStage.KEY_UNWRAP, alias, unwrapped - timed.found());
+
+                    return new CachedSecretKey(keyBytes, timed.key().keyAlgorithm());
+                }));
+    }
+
+    private TimedKey findKey(String alias, String keyVersion) {
+        long start = System.nanoTime();
+        StoredKey key = keyLoader.loadKey(alias, keyVersion)
+            .orElseThrow(() -> new KeyNotFoundException(alias));
+
+        return new TimedKey(key, start, System.nanoTime());
+    }
+
+    private Mono<byte[]> unwrapKeyData(StoredKey key) {
+        if (key.kekVersion() == null) {
+            return cryptographyProvider.decrypt("RSA-OAEP-256", key.keyData(), masterKeyAlias);
+        }
+        // still on the bounded elastic scheduler, the first use may unwrap KEKs by Key Vault
+        return Mono.fromCallable(() -> keyEncryptionKeyManager.unwrap(key.kekVersion(), key.keyData(), key.keyAlias(), key.keyVersion()));
+    }
+
+    private record TimedKey(StoredKey key, long start, long found) {
+    }
+}
@@ -0,0 +1,22 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * @param ttl          - how long an unwrapped key is kept in memory after it was loaded
+ * @param negativeTtl  - how long a lookup of an unknown key is answered without querying the database
+ * @param maximumSize  - maximum number of unwrapped keys kept in memory
+ * @param destroyDelay - how long an evicted key stays usable before it is zeroized, must exceed the longest
+ *                     operation holding a key (a batch request, a chunk of an offset job)
+ */
+@ConfigurationProperties("key-manager.cache")
+public record KeyCacheProperties(
+    @DefaultValue("15m") Duration ttl,
+    @DefaultValue("30s") Duration negativeTtl,
+    @DefaultValue("1000") long maximumSize,
+    @DefaultValue("1m") Duration destroyDelay
+) {
+}
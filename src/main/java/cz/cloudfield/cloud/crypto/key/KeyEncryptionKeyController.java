@@ -0,0 +1,27 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/keys/kek")
+public class KeyEncryptionKeyController {
+
+    private final KeyEncryptionKeyManager keyEncryptionKeyManager;
+    private final DatabaseKeyManager databaseKeyManager;
+
+    public KeyEncryptionKeyController(KeyEncryptionKeyManager keyEncryptionKeyManager, DatabaseKeyManager databaseKeyManager) {
+        this.keyEncryptionKeyManager = keyEncryptionKeyManager;
+        this.databaseKeyManager = databaseKeyManager;
+    }
+
+    /**
+     * Creates a new KEK version and re-wraps all keys under it.
+     */
+    @PostMapping("/rotate")
+    public KeyEncryptionKeyRotationDTO rotate() {
+        int kekVersion = keyEncryptionKeyManager.rotate();
+        return new KeyEncryptionKeyRotationDTO(kekVersion, databaseKeyManager.rewrapKeys());
+    }
+}
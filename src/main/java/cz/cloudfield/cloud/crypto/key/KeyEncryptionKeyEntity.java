@@ -0,0 +1,71 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import jakarta.persistence.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "key_encryption_key")
+@EntityListeners(AuditingEntityListener.class)
+public class KeyEncryptionKeyEntity {
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "kek_version")
+    private Integer kekVersion;
+
+    @Column(name = "key_data")
+    private String keyData;
+
+    @Column(name = "master_key_alias")
+    private String masterKeyAlias;
+
+    @Column(name = "created")
+    @CreatedDate
+    private LocalDateTime created;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getKekVersion() {
+        return kekVersion;
+    }
+
+    public void setKekVersion(Integer kekVersion) {
+        this.kekVersion = kekVersion;
+    }
+
+    public String getKeyData() {
+        return keyData;
+    }
+
+    public void setKeyData(String keyData) {
+        this.keyData = keyData;
+    }
+
+    public String getMasterKeyAlias() {
+        return masterKeyAlias;
+    }
+
+    public void setMasterKeyAlias(String masterKeyAlias) {
+        this.masterKeyAlias = masterKeyAlias;
+    }
+
+    public LocalDateTime getCreated() {
+        return created;
+    }
+
+    public void setCreated(LocalDateTime created) {
+        this.created = created;
+    }
+}
@@ -0,0 +1,39 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Unwraps key encryption keys and migrates keys to the current KEK version at startup, see
+ * {@link KeyEncryptionKeyProperties}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class KeyEncryptionKeyInitializer implements ApplicationRunner {
+
+    private final KeyEncryptionKeyProperties properties;
+    private final KeyEncryptionKeyManager keyEncryptionKeyManager;
+    private final DatabaseKeyManager databaseKeyManager;
+
+    public KeyEncryptionKeyInitializer(
+        KeyEncryptionKeyProperties properties,
+        KeyEncryptionKeyManager keyEncryptionKeyManager,
+        DatabaseKeyManager databaseKeyManager) {
+        this.properties = properties;
+        this.keyEncryptionKeyManager = keyEncryptionKeyManager;
+        this.databaseKeyManager = databaseKeyManager;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (properties.initializeOnStartup()) {
+            keyEncryptionKeyManager.initialize();
+        }
+        if (properties.migrateOnStartup()) {
+            databaseKeyManager.rewrapKeys();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import cz.cloudfield.cloud.crypto.CryptographyProvider;
+import cz.cloudfield.cloud.crypto.utils.CryptoUtils;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Envelope encryption of keys stored by {@link DatabaseKeyManager}. Keys are wrapped by an AES-256 key encryption key
+ * (KEK) using AES-GCM, only the KEKs are wrapped by the Key Vault master key. KEKs are unwrapped once and held
+ * in memory, so unwrapping a key is a local AES operation instead of a Key Vault call.
+ *
+ * <p>
+ * KEKs are versioned, new keys are wrapped by the latest version. Wrapped key data is {@code IV || ciphertext || tag},
+ * alias and version of the key are authenticated as additional data, so wrapped data cannot be moved to another key.
+ * </p>
+ *
+ * <p>
+ * A KEK version created by another instance is loaded when a key wrapped by it is unwrapped for the first time.
+ * </p>
+ */
+@Component
+public class KeyEncryptionKeyManager {
+    private static final Logger logger = LoggerFactory.getLogger(KeyEncryptionKeyManager.class);
+
+    private static final String KEK_ALGORITHM = "AES";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEK_LENGTH = 32;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private final KeyEncryptionKeyRepository keyEncryptionKeyRepository;
+    private final CryptographyProvider cryptographyProvider;
+    private final String masterKeyAlias;
+
+    private final SecureRandom random = new SecureRandom();
+    // not synchronized - unwrapping calls Key Vault and must not pin virtual threads
+    private final Lock lock = new ReentrantLock();
+    private volatile KeyEncryptionKeys keys;
+
+    public KeyEncryptionKeyManager(
+        KeyEncryptionKeyRepository keyEncryptionKeyRepository,
+        CryptographyProvider cryptographyProvider,
+        @Value("${master-key-alias}") String masterKeyAlias) {
+        this.keyEncryptionKeyRepository = keyEncryptionKeyRepository;
+        this.cryptographyProvider = cryptographyProvider;
+        this.masterKeyAlias = masterKeyAlias;
+    }
+
+    /**
+     * Unwraps all KEKs, the first KEK is created when there is none. Called implicitly on first use.
+     */
+    public void initialize() {
+        keys();
+    }
+
+    public int currentVersion() {
+        return keys().currentVersion();
+    }
+
+    public WrappedKey wrap(byte[] key, String alias, String keyVersion) {
+        KeyEncryptionKeys keys = keys();
+
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION, CryptoUtils.getProvider(KEK_ALGORITHM));
+            cipher.init(Cipher.ENCRYPT_MODE, keys.current(), new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(additionalData(alias, keyVersion));
+
+            byte[] data = Arrays.copyOf(iv, IV_LENGTH + cipher.getOutputSize(key.length));
+            cipher.doFinal(key, 0, key.length, data, IV_LENGTH);
+
+            return new WrappedKey(keys.currentVersion(), data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Wrapping of key " + alias + " failed", e);
+        }
+    }
+
+    public byte[] unwrap(int kekVersion, byte[] data, String alias, String keyVersion) {
+        SecretKey kek = keys().get(kekVersion);
+        if (kek == null) {
+            kek = reload(kekVersion);
+        }
+        if (kek == null) {
+            throw new IllegalStateException("Key encryption key version " + kekVersion + " of key " + alias + " does not exist");
+        }
+
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION, CryptoUtils.getProvider(KEK_ALGORITHM));
+            cipher.init(Cipher.DECRYPT_MODE, kek, new GCMParameterSpec(TAG_LENGTH, data, 0, IV_LENGTH));
+            cipher.updateAAD(additionalData(alias, keyVersion));
+
+            return cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unwrapping of key " + alias + " failed", e);
+        }
+    }
+
+    /**
+     * Creates a new KEK version, keys wrapped from now on use it. Keys wrapped by previous versions remain readable.
+     * The next version follows the latest stored one, which may have been created by another instance.
+     *
+     * @return the new KEK version
+     */
+    public int rotate() {
+        lock.lock();
+        try {
+            KeyEncryptionKeys keys = reloadKeys(keys());
+            KeyEncryptionKeyEntity entity;
+            try {
+                entity = createKeyEncryptionKey(keys.currentVersion() + 1);
+            } catch (DataIntegrityViolationException e) {
+                // another instance rotated concurrently
+                keys = reloadKeys(keys);
+                entity = createKeyEncryptionKey(keys.currentVersion() + 1);
+            }
+
+            Map<Integer, CachedSecretKey> rotated = new HashMap<>(keys.keys());
+            rotated.put(entity.getKekVersion(), unwrapKeyEncryptionKey(entity));
+            this.keys = new KeyEncryptionKeys(Map.copyOf(rotated), entity.getKekVersion());
+
+            logger.info("Key encryption key rotated to version {}.", entity.getKekVersion());
+            return entity.getKekVersion();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        KeyEncryptionKeys keys = this.keys;
+        if (keys != null) {
+            keys.keys().values().forEach(CachedSecretKey::destroy);
+        }
+    }
+
+    private KeyEncryptionKeys keys() {
+        KeyEncryptionKeys keys = this.keys;
+        if (keys == null) {
+            lock.lock();
+            try {
+                keys = this.keys;
+                if (keys == null) {
+                    keys = load();
+                    this.keys = keys;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Unwraps KEK versions created since the KEKs were loaded, e.g. by rotation on another instance. Concurrent
+     * callers wait for a single reload, already unwrapped KEKs are kept.
+     *
+     * @return KEK of given version, {@code null} when it does not exist even after the reload
+     */
+    private SecretKey reload(int kekVersion) {
+        lock.lock();
+        try {
+            KeyEncryptionKeys keys = keys();
+            SecretKey kek = keys.get(kekVersion);
+            if (kek != null) {
+                // reloaded by another thread meanwhile
+                return kek;
+            }
+
+            return reloadKeys(keys).get(kekVersion);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds KEK versions stored since the given keys were loaded, must be called under the lock.
+     */
+    private KeyEncryptionKeys reloadKeys(KeyEncryptionKeys keys) {
+        Map<Integer, CachedSecretKey> reloaded = new HashMap<>(keys.keys());
+        int currentVersion = keys.currentVersion();
+        for (KeyEncryptionKeyEntity entity : keyEncryptionKeyRepository.findAllByOrderByKekVersionAsc()) {
+            if (!reloaded.containsKey(entity.getKekVersion())) {
+                reloaded.put(entity.getKekVersion(), unwrapKeyEncryptionKey(entity));
+            }
+            currentVersion = Math.max(currentVersion, entity.getKekVersion());
+        }
+        if (reloaded.size() == keys.keys().size()) {
+            return keys;
+        }
+
+        this.keys = new KeyEncryptionKeys(Map.copyOf(reloaded), currentVersion);
+        logger.info("Reloaded key encryption keys, {} versions, current version is {}.", reloaded.size(), currentVersion);
+        return this.keys;
+    }
+
+    private KeyEncryptionKeys load() {
+        List<KeyEncryptionKeyEntity> entities = keyEncryptionKeyRepository.findAllByOrderByKekVersionAsc();
+        if (entities.isEmpty()) {
+            try {
+                entities = List.of(createKeyEncryptionKey(1));
+            } catch (DataIntegrityViolationException e) {
+                // another instance created the first KEK concurrently
+                entities = keyEncryptionKeyRepository.findAllByOrderByKekVersionAsc();
+            }
+        }
+
+        Map<Integer, CachedSecretKey> keys = new HashMap<>();
+        for (KeyEncryptionKeyEntity entity : entities) {
+            keys.put(entity.getKekVersion(), unwrapKeyEncryptionKey(entity));
+        }
+        int currentVersion = entities.getLast().getKekVersion();
+
+        logger.info("Unwrapped {} key encryption keys, current version is {}.", keys.size(), currentVersion);
+        return new KeyEncryptionKeys(Map.copyOf(keys), currentVersion);
+    }
+
+    private KeyEncryptionKeyEntity createKeyEncryptionKey(int kekVersion) {
+        byte[] kek = new byte[KEK_LENGTH];
+        random.nextBytes(kek);
+        try {
+            KeyEncryptionKeyEntity entity = new KeyEncryptionKeyEntity();
+            entity.setKekVersion(kekVersion);
+            entity.setKeyData(HexFormat.of().withUpperCase().formatHex(cryptographyProvider.encrypt("RSA-OAEP-256", kek, masterKeyAlias)));
+            entity.setMasterKeyAlias(masterKeyAlias);
+
+            return keyEncryptionKeyRepository.save(entity);
+        } finally {
+            Arrays.fill(kek, (byte) 0);
+        }
+    }
+
+    private CachedSecretKey unwrapKeyEncryptionKey(KeyEncryptionKeyEntity entity) {
+        byte[] kek = cryptographyProvider.decrypt("RSA-OAEP-256", HexFormat.of().parseHex(entity.getKeyData()), entity.getMasterKeyAlias());
+        return new CachedSecretKey(kek, KEK_ALGORITHM);
+    }
+
+    private static byte[] additionalData(String alias, String keyVersion) {
+        return (alias + '\0' + keyVersion).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param kekVersion - version of the KEK which wrapped the key
+     * @param data       - {@code IV || ciphertext || tag}
+     */
+    public record WrappedKey(int kekVersion, byte[] data) {
+    }
+
+    private record KeyEncryptionKeys(Map<Integer, CachedSecretKey> keys, int currentVersion) {
+
+        SecretKey current() {
+            return keys.get(currentVersion);
+        }
+
+        SecretKey get(int kekVersion) {
+            return keys.get(kekVersion);
+        }
+    }
+}
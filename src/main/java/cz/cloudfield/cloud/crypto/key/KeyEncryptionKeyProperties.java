@@ -0,0 +1,15 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param initializeOnStartup - unwrap (or create the first) key encryption key at startup instead of on first use
+ * @param migrateOnStartup    - re-wrap keys which are not wrapped by the current key encryption key at startup
+ */
+@ConfigurationProperties("key-manager.kek")
+public record KeyEncryptionKeyProperties(
+    @DefaultValue("true") boolean initializeOnStartup,
+    @DefaultValue("true") boolean migrateOnStartup
+) {
+}
@@ -0,0 +1,12 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface KeyEncryptionKeyRepository extends JpaRepository<KeyEncryptionKeyEntity, Long> {
+
+    List<KeyEncryptionKeyEntity> findAllByOrderByKekVersionAsc();
+}
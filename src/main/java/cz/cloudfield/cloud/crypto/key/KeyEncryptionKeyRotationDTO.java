@@ -0,0 +1,4 @@
+package cz.cloudfield.cloud.crypto.key;
+
+public record KeyEncryptionKeyRotationDTO(int kekVersion, int rewrappedKeys) {
+}
@@ -0,0 +1,15 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param maxKeyBlocks - maximum number of key blocks in one import request
+ * @param maxBatchSize - maximum number of keys in one batch creation request
+ */
+@ConfigurationProperties("key-manager.import")
+public record KeyImportProperties(
+    @DefaultValue("10000") int maxKeyBlocks,
+    @DefaultValue("10000") int maxBatchSize
+) {
+}
@@ -0,0 +1,19 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import java.util.List;
+
+/**
+ * @param kekAlias  - alias of the AES key exchange key the key blocks are wrapped and MACed by
+ * @param keyBlocks - key blocks with alias and version the keys are stored under
+ */
+public record KeyImportRequestDTO(
+    String kekAlias,
+    List<KeyBlock> keyBlocks
+) {
+
+    /**
+     * @param keyBlock - TR-31 key block in hex
+     */
+    public record KeyBlock(String keyAlias, String keyVersion, String keyBlock) {
+    }
+}
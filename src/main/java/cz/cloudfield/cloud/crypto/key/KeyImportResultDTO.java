@@ -0,0 +1,13 @@
+package cz.cloudfield.cloud.crypto.key;
+
+/**
+ * Result of one key block of an import, {@code error} is set when the key was not imported.
+ */
+public record KeyImportResultDTO(
+    String keyAlias,
+    String keyVersion,
+    String keyType,
+    boolean imported,
+    String error
+) {
+}
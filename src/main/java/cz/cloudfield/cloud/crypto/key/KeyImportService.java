@@ -0,0 +1,171 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import cz.cloudfield.cloud.crypto.payment.PaymentBatchConfiguration;
+import cz.cloudfield.cloud.crypto.utils.TR31KeyBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Imports keys from TR-31 key blocks of a key exchange file. The KEK is resolved once and must be a stored key
+ * of type {@code KEK}. Key blocks are parsed, MAC verified and unwrapped in parallel on the batch pool,
+ * keys not matching algorithm and length of their header are rejected. Key blocks of keys which are already stored
+ * are rejected upfront, so they do not roll back the others. All valid keys are stored by one
+ * {@link KeyManager#createKeys(List)} call.
+ */
+@Service
+public class KeyImportService {
+    private static final Logger logger = LoggerFactory.getLogger(KeyImportService.class);
+
+    private static final String KEY_VERSION = "01";
+    private static final String KEK_TYPE = "KEK";
+    private static final int DOUBLE_LENGTH_TDES_KEY = 16;
+    private static final int TDES_KEY_PART = 8;
+
+    // TR-31 key usage -> key type
+    private static final Map<String, String> KEY_TYPES = Map.of(
+        "P0", "ZPK",
+        "V0", "PVK",
+        "V1", "PVK",
+        "V2", "PVK",
+        "E0", "IMK",
+        "D0", "DEK",
+        "K0", KEK_TYPE
+    );
+
+    private final KeyManager keyManager;
+    private final ForkJoinPool batchPool;
+    private final int maxKeyBlocks;
+
+    public KeyImportService(
+        KeyManager keyManager,
+        @Qualifier(PaymentBatchConfiguration.BATCH_POOL) ForkJoinPool batchPool,
+        KeyImportProperties properties) {
+        this.keyManager = keyManager;
+        this.batchPool = batchPool;
+        this.maxKeyBlocks = properties.maxKeyBlocks();
+    }
+
+    /**
+     * @return result of every key block in order of the request, an invalid key block does not fail the others
+     */
+    public List<KeyImportResultDTO> importKeys(KeyImportRequestDTO request) {
+        List<KeyImportRequestDTO.KeyBlock> keyBlocks = request.keyBlocks();
+        if (keyBlocks.size() > maxKeyBlocks) {
+            throw new IllegalArgumentException("Number of key blocks " + keyBlocks.size() + " exceeds maximum " + maxKeyBlocks);
+        }
+        String kekType = keyManager.getKeyType(request.kekAlias(), KEY_VERSION);
+        if (!KEK_TYPE.equals(kekType)) {
+            throw new IllegalArgumentException("Key " + request.kekAlias() + " of type " + kekType + " is not a " + KEK_TYPE);
+        }
+        SecretKey kek = keyManager.getKey(request.kekAlias(), KEY_VERSION);
+
+        CreateKeyRequestDTO[] keys = new CreateKeyRequestDTO[keyBlocks.size()];
+        String[] errors = new String[keyBlocks.size()];
+        Set<String> keyIds = new HashSet<>();
+        for (int i = 0; i < keyBlocks.size(); i++) {
+            KeyImportRequestDTO.KeyBlock keyBlock = keyBlocks.get(i);
+            if (!keyIds.add(keyBlock.keyAlias() + '\0' + keyBlock.keyVersion())) {
+                errors[i] = "Duplicate key " + keyBlock.keyAlias() + " version " + keyBlock.keyVersion();
+            }
+        }
+        Set<String> storedKeyIds = new HashSet<>();
+        keyManager.findKeys(keyBlocks.stream().map(KeyImportRequestDTO.KeyBlock::keyAlias).filter(Objects::nonNull).distinct().toList())
+            .forEach(key -> storedKeyIds.add(key.getKeyAlias() + '\0' + key.getKeyVersion()));
+        for (int i = 0; i < keyBlocks.size(); i++) {
+            KeyImportRequestDTO.KeyBlock keyBlock = keyBlocks.get(i);
+            if (errors[i] == null && storedKeyIds.contains(keyBlock.keyAlias() + '\0' + keyBlock.keyVersion())) {
+                errors[i] = "Key " + keyBlock.keyAlias() + " version " + keyBlock.keyVersion() + " already exists";
+            }
+        }
+
+        batchPool.submit(() -> IntStream.range(0, keyBlocks.size()).parallel()
+            .filter(i -> errors[i] == null)
+            .forEach(i -> {
+                try {
+                    keys[i] = unwrapKeyBlock(keyBlocks.get(i), kek);
+                } catch (GeneralSecurityException | RuntimeException e) {
+                    errors[i] = errorMessage(e);
+                }
+            })).join();
+
+        List<CreateKeyRequestDTO> unwrappedKeys = Arrays.stream(keys).filter(key -> key != null).toList();
+        try {
+            if (!unwrappedKeys.isEmpty()) {
+                keyManager.createKeys(unwrappedKeys);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Storing of {} imported keys failed.", unwrappedKeys.size(), e);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    errors[i] = "Key was not stored: " + errorMessage(e);
+                }
+            }
+        } finally {
+            unwrappedKeys.forEach(key -> Arrays.fill(key.keyData(), (byte) 0));
+        }
+
+        List<KeyImportResultDTO> results = new ArrayList<>(keyBlocks.size());
+        int imported = 0;
+        for (int i = 0; i < keyBlocks.size(); i++) {
+            KeyImportRequestDTO.KeyBlock keyBlock = keyBlocks.get(i);
+            String keyType = keys[i] != null ? keys[i].keyType() : null;
+            results.add(new KeyImportResultDTO(keyBlock.keyAlias(), keyBlock.keyVersion(), keyType, errors[i] == null, errors[i]));
+            if (errors[i] == null) {
+                imported++;
+            }
+        }
+
+        logger.info("Imported {} of {} key blocks wrapped by {}.", imported, keyBlocks.size(), request.kekAlias());
+        return results;
+    }
+
+    private CreateKeyRequestDTO unwrapKeyBlock(KeyImportRequestDTO.KeyBlock keyBlock, SecretKey kek) throws GeneralSecurityException {
+        if (keyBlock.keyAlias() == null || keyBlock.keyAlias().isBlank() || keyBlock.keyVersion() == null || keyBlock.keyVersion().isBlank()) {
+            throw new IllegalArgumentException("Key alias and version must be set");
+        }
+
+        TR31KeyBlock parsed = TR31KeyBlock.parse(HexFormat.of().parseHex(keyBlock.keyBlock()));
+        if (!parsed.verifyMac(kek)) {
+            throw new GeneralSecurityException("Key block MAC verification failed");
+        }
+        String keyType = KEY_TYPES.get(parsed.keyUsage());
+        if (keyType == null) {
+            throw new IllegalArgumentException("Unsupported key usage " + parsed.keyUsage());
+        }
+
+        int keyLength = parsed.keyLength();
+        byte[] keyData = parsed.unwrapKey(kek);
+        if (keyData.length != keyLength) {
+            Arrays.fill(keyData, (byte) 0);
+            throw new GeneralSecurityException("Key length " + keyData.length + " does not match header key length " + keyLength);
+        }
+        if ("DESede".equals(parsed.keyAlgorithm()) && keyData.length == DOUBLE_LENGTH_TDES_KEY) {
+            // stored as K1 K2 K1, not every provider accepts double length TDES keys
+            byte[] tripleLengthKey = Arrays.copyOf(keyData, DOUBLE_LENGTH_TDES_KEY + TDES_KEY_PART);
+            System.arraycopy(keyData, 0, tripleLengthKey, DOUBLE_LENGTH_TDES_KEY, TDES_KEY_PART);
+            Arrays.fill(keyData, (byte) 0);
+            keyData = tripleLengthKey;
+        }
+
+        return new CreateKeyRequestDTO(keyBlock.keyAlias(), keyData, parsed.keyAlgorithm(), keyBlock.keyVersion(), keyType);
+    }
+
+    private static String errorMessage(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,84 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Lookup of one stored key by plain JDBC, used on key cache misses. Unlike {@link CryptographicKeyRepository} it
+ * does not create managed entities, so a lookup costs one prepared statement on the unique index of alias and version.
+ *
+ * <p>
+ * {@link #loadKey(String, String)} records the load in the same statement - time of the last load and number of
+ * loads on that day. Keys in use are loaded again whenever they expire from the key cache, so the most loaded keys
+ * are the ones worth preloading on startup, see {@link #findMostLoadedAliases(String, int)}. Counting per day keeps
+ * keys which are only preloaded behind the keys used by traffic.
+ * </p>
+ */
+@Component
+public class KeyLoader {
+
+    private static final String FIND_KEY = """
+        SELECT key_algorithm, key_type, key_data, kek_version
+        FROM cryptographic_key
+        WHERE key_alias = ? AND key_version = ?
+        """;
+
+    private static final String LOAD_KEY = """
+        UPDATE cryptographic_key
+        SET load_count = CASE WHEN last_loaded >= CURRENT_DATE THEN load_count + 1 ELSE 1 END,
+            last_loaded = CURRENT_TIMESTAMP
+        WHERE key_alias = ? AND key_version = ?
+        RETURNING key_algorithm, key_type, key_data, kek_version
+        """;
+
+    // keys loaded on the most recent day first, then by number of loads that day
+    private static final String FIND_MOST_LOADED_ALIASES = """
+        SELECT key_alias
+        FROM cryptographic_key
+        WHERE key_version = ? AND last_loaded IS NOT NULL
+        ORDER BY date_trunc('day', last_loaded) DESC, load_count DESC
+        LIMIT ?
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public KeyLoader(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<StoredKey> findKey(String alias, String keyVersion) {
+        return Optional.ofNullable(jdbcTemplate.query(FIND_KEY, storedKey(alias, keyVersion), alias, keyVersion));
+    }
+
+    /**
+     * Reads the key like {@link #findKey(String, String)} and records the load.
+     */
+    public Optional<StoredKey> loadKey(String alias, String keyVersion) {
+        return Optional.ofNullable(jdbcTemplate.query(LOAD_KEY, storedKey(alias, keyVersion), alias, keyVersion));
+    }
+
+    /**
+     * @return aliases of at most {@code limit} keys of given version which were loaded, most recently and most often
+     * loaded first
+     */
+    public List<String> findMostLoadedAliases(String keyVersion, int limit) {
+        return jdbcTemplate.queryForList(FIND_MOST_LOADED_ALIASES, String.class, keyVersion, limit);
+    }
+
+    private static ResultSetExtractor<StoredKey> storedKey(String alias, String keyVersion) {
+        return resultSet -> {
+            if (!resultSet.next()) {
+                return null;
+            }
+            // wasNull refers to the last read column, so it has to follow getInt immediately
+            int kekVersion = resultSet.getInt("kek_version");
+            Integer wrappedBy = resultSet.wasNull() ? null : kekVersion;
+            return new StoredKey(alias, keyVersion, resultSet.getString("key_algorithm"), resultSet.getString("key_type"),
+                resultSet.getBytes("key_data"), wrappedBy);
+        };
+    }
+}
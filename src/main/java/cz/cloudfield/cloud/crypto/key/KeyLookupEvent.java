@@ -0,0 +1,37 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Lookup of a key in {@link UnwrappedKeyCache}, lasts until the key is loaded on a miss.
+ */
+@Name("cz.cloudfield.crypto.KeyLookup")
+@Label("Key Lookup")
+@Category({"Payment Crypto", "Keys"})
+@Description("Lookup of an unwrapped key, including loading and unwrapping on a cache miss")
+@StackTrace(false)
+class KeyLookupEvent extends Event {
+
+    static final String HIT = "hit";
+    static final String MISS = "miss";
+    static final String COALESCED = "coalesced";
+    static final String NEGATIVE_HIT = "negative-hit";
+
+    @Label("Key Alias")
+    String alias;
+
+    @Label("Key Version")
+    String keyVersion;
+
+    @Label("Cache Outcome")
+    @Description("hit, miss, coalesced (waited for a concurrent load) or negative-hit (key known to be missing)")
+    String cacheOutcome;
+
+    @Label("Success")
+    boolean success;
+}
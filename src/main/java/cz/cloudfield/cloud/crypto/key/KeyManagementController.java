@@ -2,7 +2,9 @@ package cz.cloudfield.cloud.crypto.key;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.Arrays;
 import java.util.List;
 
 @RestController
@@ -10,19 +12,51 @@ import java.util.List;
 public class KeyManagementController {
 
     private final KeyManager keyManager;
+    private final KeyImportService keyImportService;
+    private final int maxBatchSize;
 
-    public KeyManagementController(KeyManager keyManager) {
+    public KeyManagementController(KeyManager keyManager, KeyImportService keyImportService, KeyImportProperties properties) {
         this.keyManager = keyManager;
+        this.keyImportService = keyImportService;
+        this.maxBatchSize = properties.maxBatchSize();
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public void createKey(@RequestBody CreateKeyRequestDTO request) {
-        keyManager.createKey(request.keyAlias(), request.keyVersion(), request.keyAlgorithm(), request.keyType(), request.keyData());
+        try {
+            keyManager.createKey(request.keyAlias(), request.keyVersion(), request.keyAlgorithm(), request.keyType(), request.keyData());
+        } finally {
+            zeroize(request);
+        }
+    }
+
+    @PostMapping("batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void createKeys(@RequestBody List<CreateKeyRequestDTO> requests) {
+        try {
+            if (requests.size() > maxBatchSize) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch size " + requests.size() + " exceeds maximum " + maxBatchSize);
+            }
+            keyManager.createKeys(requests);
+        } finally {
+            requests.forEach(KeyManagementController::zeroize);
+        }
+    }
+
+    @PostMapping("import")
+    public List<KeyImportResultDTO> importKeys(@RequestBody KeyImportRequestDTO request) {
+        return keyImportService.importKeys(request);
     }
 
     @GetMapping
     public List<CryptographicKey> listKeys() {
         return keyManager.listKeys();
     }
+
+    private static void zeroize(CreateKeyRequestDTO request) {
+        if (request.keyData() != null) {
+            Arrays.fill(request.keyData(), (byte) 0);
+        }
+    }
 }
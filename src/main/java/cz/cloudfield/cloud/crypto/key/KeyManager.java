@@ -1,13 +1,36 @@
 package cz.cloudfield.cloud.crypto.key;
 
 import javax.crypto.SecretKey;
+import java.util.Collection;
 import java.util.List;
 
 public interface KeyManager {
 
     SecretKey getKey(String alias, String keyVersion);
 
+    /**
+     * @return type of the stored key, e.g. {@code KEK}
+     * @throws KeyNotFoundException when the key does not exist
+     */
+    String getKeyType(String alias, String keyVersion);
+
     void createKey(String alias, String keyVersion, String keyAlgorithm, String keyType, byte[] keyData);
 
+    /**
+     * Creates all keys at once, either all keys are created or none.
+     */
+    void createKeys(List<CreateKeyRequestDTO> keys);
+
     List<CryptographicKey> listKeys();
+
+    /**
+     * @return aliases of at most {@code limit} keys of given version which were used recently and most often,
+     * most used first
+     */
+    List<String> findMostLoadedAliases(String keyVersion, int limit);
+
+    /**
+     * @return stored keys of given aliases, all versions
+     */
+    List<CryptographicKey> findKeys(Collection<String> aliases);
 }
@@ -0,0 +1,8 @@
+package cz.cloudfield.cloud.crypto.key;
+
+public class KeyNotFoundException extends IllegalArgumentException {
+
+    public KeyNotFoundException(String alias) {
+        super("Key not found: " + alias);
+    }
+}
@@ -0,0 +1,16 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import reactor.core.publisher.Mono;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Non-blocking access to keys of {@link KeyManager}.
+ */
+public interface ReactiveKeyManager {
+
+    /**
+     * @return key, or {@link KeyNotFoundException} when the key does not exist
+     */
+    Mono<SecretKey> getKey(String alias, String keyVersion);
+}
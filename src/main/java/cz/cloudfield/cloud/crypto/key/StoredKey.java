@@ -0,0 +1,17 @@
+package cz.cloudfield.cloud.crypto.key;
+
+/**
+ * Stored key as read by {@link KeyLoader}, the key material is still wrapped.
+ *
+ * @param keyData    - key wrapped by the KEK {@code kekVersion}, or by the master key when {@code kekVersion} is null
+ * @param kekVersion - version of {@link KeyEncryptionKeyManager} KEK which wrapped the key
+ */
+public record StoredKey(
+    String keyAlias,
+    String keyVersion,
+    String keyAlgorithm,
+    String keyType,
+    byte[] keyData,
+    Integer kekVersion
+) {
+}
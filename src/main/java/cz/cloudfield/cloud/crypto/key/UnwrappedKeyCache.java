@@ -0,0 +1,194 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.utils.CryptoUtils;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-memory cache of keys unwrapped by the master key. Entries expire after
+ * {@link KeyCacheProperties#ttl()}. A key leaving the cache may still be used by running operations, so its pooled
+ * ciphers are dropped at once and the key material is zeroized after {@link KeyCacheProperties#destroyDelay()}.
+ *
+ * <p>
+ * Concurrent misses for the same alias and version are coalesced - only the first caller runs the loader,
+ * all other callers wait for it and receive the same key or the same exception. Keys which do not exist
+ * are remembered for {@link KeyCacheProperties#negativeTtl()}. Hits and misses are counted per alias.
+ * </p>
+ */
+@Component
+public class UnwrappedKeyCache {
+
+    private final AsyncCache<KeyId, CachedSecretKey> cache;
+    private final Cache<KeyId, Boolean> missingKeys;
+    private final CryptoMetrics metrics;
+    private final Duration destroyDelay;
+    private final ScheduledExecutorService destroyer = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("key-destroyer").daemon().factory());
+    // evicted keys waiting for destroyDelay
+    private final Set<CachedSecretKey> evictedKeys = ConcurrentHashMap.newKeySet();
+
+    public UnwrappedKeyCache(KeyCacheProperties properties, CryptoMetrics metrics) {
+        this.destroyDelay = properties.destroyDelay();
+        this.cache = Caffeine.newBuilder()
+            .expireAfterWrite(properties.ttl())
+            .maximumSize(properties.maximumSize())
+            // removal notifications are cheap, deliver them on the evicting thread
+            .executor(Runnable::run)
+            .removalListener(this::onRemoval)
+            .buildAsync();
+        this.missingKeys = Caffeine.newBuilder()
+            .expireAfterWrite(properties.negativeTtl())
+            .maximumSize(properties.maximumSize())
+            .build();
+        this.metrics = metrics;
+    }
+
+    public CachedSecretKey get(String alias, String keyVersion, Supplier<CachedSecretKey> loader) {
+        CompletableFuture<CachedSecretKey> key = getAsync(alias, keyVersion, () -> CompletableFuture.completedFuture(loader.get()));
+
+        try {
+            return key.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #get(String, String, Supplier)}, the loader should return without waiting
+     * for the key to be loaded.
+     *
+     * @return key, completed exceptionally with {@link KeyNotFoundException} when the key does not exist
+     */
+    public CompletableFuture<CachedSecretKey> getAsync(String alias, String keyVersion, Supplier<CompletableFuture<CachedSecretKey>> loader) {
+        KeyId keyId = new KeyId(alias, keyVersion);
+        KeyLookupEvent event = new KeyLookupEvent();
+        event.begin();
+
+        String outcome = KeyLookupEvent.HIT;
+        CompletableFuture<CachedSecretKey> key = cache.getIfPresent(keyId);
+        metrics.keyCache(alias, key != null);
+        if (key == null) {
+            if (missingKeys.getIfPresent(keyId) != null) {
+                key = CompletableFuture.failedFuture(new KeyNotFoundException(alias));
+                outcome = KeyLookupEvent.NEGATIVE_HIT;
+            } else {
+                CompletableFuture<CachedSecretKey> loading = new CompletableFuture<>();
+                key = cache.asMap().putIfAbsent(keyId, loading);
+                outcome = KeyLookupEvent.COALESCED;
+                if (key == null) {
+                    // This caller won the race - load the key, failed futures are removed from the cache automatically
+                    key = loading;
+                    outcome = KeyLookupEvent.MISS;
+                    load(keyId, loader, loading);
+                }
+            }
+        }
+
+        if (event.isEnabled()) {
+            commitOnCompletion(event, keyId, outcome, key);
+        }
+        return key;
+    }
+
+    public void invalidate(String alias, String keyVersion) {
+        KeyId keyId = new KeyId(alias, keyVersion);
+        missingKeys.invalidate(keyId);
+        cache.synchronous().invalidate(keyId);
+    }
+
+    public void invalidateAll() {
+        missingKeys.invalidateAll();
+        cache.synchronous().invalidateAll();
+        cache.synchronous().cleanUp();
+    }
+
+    /**
+     * Zeroizes all keys without waiting for {@link KeyCacheProperties#destroyDelay()}.
+     */
+    @PreDestroy
+    public void close() {
+        invalidateAll();
+        // keys evicted from now on are destroyed immediately
+        destroyer.shutdownNow();
+        evictedKeys.forEach(this::destroy);
+    }
+
+    private void load(KeyId keyId, Supplier<CompletableFuture<CachedSecretKey>> loader, CompletableFuture<CachedSecretKey> loading) {
+        CompletableFuture<CachedSecretKey> loaded;
+        try {
+            loaded = loader.get();
+        } catch (RuntimeException | Error e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+
+        loaded.whenComplete((key, e) -> {
+            if (e == null) {
+                loading.complete(key);
+                return;
+            }
+
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof KeyNotFoundException) {
+                missingKeys.put(keyId, Boolean.TRUE);
+            }
+            loading.completeExceptionally(cause);
+        });
+    }
+
+    private static void commitOnCompletion(KeyLookupEvent event, KeyId keyId, String outcome, CompletableFuture<CachedSecretKey> key) {
+        key.whenComplete((loaded, e) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.alias = keyId.alias();
+                event.keyVersion = keyId.keyVersion();
+                event.cacheOutcome = outcome;
+                event.success = e == null;
+                event.commit();
+            }
+        });
+    }
+
+    private void onRemoval(KeyId keyId, CachedSecretKey key, RemovalCause cause) {
+        if (key == null) {
+            return;
+        }
+        CryptoUtils.evictCiphers(key);
+
+        // not destroyed at once - callers holding the key would fail or compute with zeroed key material
+        evictedKeys.add(key);
+        try {
+            destroyer.schedule(() -> destroy(key), destroyDelay.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            destroy(key);
+        }
+    }
+
+    private void destroy(CachedSecretKey key) {
+        evictedKeys.remove(key);
+        key.destroy();
+        // ciphers released during the delay
+        CryptoUtils.evictCiphers(key);
+    }
+
+    private record KeyId(String alias, String keyVersion) {
+    }
+}
@@ -0,0 +1,15 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+/**
+ * Result of one item of a batch request, either {@code result} or {@code error} is set.
+ */
+public record BatchResultDTO<T>(T result, String error) {
+
+    public static <T> BatchResultDTO<T> success(T result) {
+        return new BatchResultDTO<>(result, null);
+    }
+
+    public static <T> BatchResultDTO<T> failure(Exception e) {
+        return new BatchResultDTO<>(null, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+    }
+}
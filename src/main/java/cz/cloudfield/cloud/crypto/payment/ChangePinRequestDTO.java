@@ -0,0 +1,14 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+public record ChangePinRequestDTO(
+    String zpkAlias,
+    String oldPinBlock,
+    String newPinBlock,
+    String pvkAlias,
+    String pan,
+    String pinValidationData,
+    String decimalizationTable,
+    int pinLength,
+    String offset
+) {
+}
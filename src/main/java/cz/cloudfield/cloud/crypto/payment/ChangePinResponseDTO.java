@@ -0,0 +1,8 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+/**
+ * @param pinVerificationResult - whether the old PIN matched its offset
+ * @param offset                - offset of the new PIN, {@code null} when the old PIN did not match
+ */
+public record ChangePinResponseDTO(boolean pinVerificationResult, String offset) {
+}
@@ -0,0 +1,18 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+public class PaymentBatchConfiguration {
+
+    public static final String BATCH_POOL = "paymentCryptoBatchPool";
+
+    @Bean(name = BATCH_POOL, destroyMethod = "shutdown")
+    public ForkJoinPool paymentCryptoBatchPool(PaymentBatchProperties properties) {
+        int parallelism = properties.parallelism() > 0 ? properties.parallelism() : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(parallelism);
+    }
+}
@@ -0,0 +1,15 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param parallelism  - number of threads verifying batch items, 0 means number of available processors
+ * @param maxBatchSize - maximum number of items in one batch request
+ */
+@ConfigurationProperties("payment-crypto.batch")
+public record PaymentBatchProperties(
+    @DefaultValue("0") int parallelism,
+    @DefaultValue("10000") int maxBatchSize
+) {
+}
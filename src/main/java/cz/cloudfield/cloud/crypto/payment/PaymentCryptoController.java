@@ -6,6 +6,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.security.GeneralSecurityException;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/payment-crypto")
@@ -22,6 +23,11 @@ public class PaymentCryptoController {
         return paymentCryptoService.verifyArqc(request);
     }
 
+    @PostMapping("/verify-arqc/batch")
+    public List<BatchResultDTO<VerifyArqcResponseDTO>> verifyArqcBatch(@RequestBody List<VerifyArqcRequestDTO> requests) {
+        return paymentCryptoService.verifyArqc(requests);
+    }
+
     @PostMapping("/offset")
     public String calculateOffset(@RequestBody CalculateOffsetRequestDTO request) throws GeneralSecurityException {
         return paymentCryptoService.calculateOffset(request);
@@ -31,4 +37,14 @@ public class PaymentCryptoController {
     public VerifyPinResponseDTO verifyPin(@RequestBody VerifyPinRequestDTO request) throws GeneralSecurityException {
         return paymentCryptoService.verifyPin(request);
     }
+
+    @PostMapping("/verify-pin/batch")
+    public List<BatchResultDTO<VerifyPinResponseDTO>> verifyPinBatch(@RequestBody List<VerifyPinRequestDTO> requests) {
+        return paymentCryptoService.verifyPin(requests);
+    }
+
+    @PostMapping("/change-pin")
+    public ChangePinResponseDTO changePin(@RequestBody ChangePinRequestDTO request) throws GeneralSecurityException {
+        return paymentCryptoService.changePin(request);
+    }
 }
@@ -0,0 +1,83 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.utils.CryptoStage;
+import cz.cloudfield.cloud.crypto.utils.CryptogramCalculator;
+import cz.cloudfield.cloud.crypto.utils.PinOffsetHelper;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Compute step of payment crypto operations with already resolved keys, shared by {@link PaymentCryptoServiceImpl}
+ * and {@link ReactivePaymentCryptoServiceImpl}. Latencies of the stages are recorded by {@link CryptoMetrics}.
+ */
+class PaymentCryptoOperations {
+
+    static final String VERIFY_ARQC = "verify-arqc";
+    static final String CALCULATE_OFFSET = "calculate-offset";
+    static final String VERIFY_PIN = "verify-pin";
+    static final String CHANGE_PIN = "change-pin";
+
+    private final UdkCache udkCache;
+    private final CryptoMetrics metrics;
+
+    PaymentCryptoOperations(UdkCache udkCache, CryptoMetrics metrics) {
+        this.udkCache = udkCache;
+        this.metrics = metrics;
+    }
+
+    VerifyArqcResponseDTO verifyArqc(SecretKey imk, VerifyArqcRequestDTO request) throws GeneralSecurityException {
+        boolean arqcVerificationResult = verifyArqc(imk, request.imkAlias(), request.pan(), request.panSeqNumber(),
+            HexFormat.of().parseHex(request.atc()), ByteBuffer.wrap(HexFormat.of().parseHex(request.emvTransactionData())), request.arqc());
+
+        return new VerifyArqcResponseDTO(arqcVerificationResult);
+    }
+
+    boolean verifyArqc(SecretKey imk, String imkAlias, String pan, String panSeqNumber, byte[] atc, ByteBuffer transactionData, byte[] arqc) throws GeneralSecurityException {
+        long start = System.nanoTime();
+        SecretKey udk = udkCache.getUdk(imkAlias, imk, pan, panSeqNumber);
+        long udkDerived = System.nanoTime();
+
+        SecretKey sessionKey = CryptogramCalculator.deriveSessionKey(atc, udk);
+        long sessionKeyDerived = System.nanoTime();
+
+        byte[] calculated = CryptogramCalculator.calculateMAC(sessionKey, transactionData);
+        long macCalculated = System.nanoTime();
+
+        metrics.record(VERIFY_ARQC, CryptoStage.UDK_DERIVATION, imkAlias, udkDerived - start);
+        metrics.record(VERIFY_ARQC, CryptoStage.SESSION_KEY_DERIVATION, imkAlias, sessionKeyDerived - udkDerived);
+        metrics.record(VERIFY_ARQC, CryptoStage.MAC, imkAlias, macCalculated - sessionKeyDerived);
+
+        return MessageDigest.isEqual(calculated, arqc);
+    }
+
+    /**
+     * @return helper recording PIN stages of given operation
+     */
+    PinOffsetHelper pinOffsetHelper(String operation, SecretKey pvk, String pvkAlias, SecretKey zpk, String zpkAlias) {
+        return new PinOffsetHelper(pvk, zpk, metrics.pinStages(operation, pvkAlias, zpkAlias));
+    }
+
+    String calculateOffset(PinOffsetHelper pinOffsetHelper, CalculateOffsetRequestDTO request) throws GeneralSecurityException {
+        return pinOffsetHelper.calculateOffset(HexFormat.of().parseHex(request.pinBlock()), request.pan(),
+            request.decimalizationTable(), request.pinValidationData(), request.pinLength());
+    }
+
+    VerifyPinResponseDTO verifyPin(PinOffsetHelper pinOffsetHelper, VerifyPinRequestDTO request) throws GeneralSecurityException {
+        boolean pinVerificationResult = pinOffsetHelper.verifyPin(HexFormat.of().parseHex(request.pinBlock()), request.pan(),
+            request.decimalizationTable(), request.pinValidationData(), request.pinLength(), request.offset());
+
+        return new VerifyPinResponseDTO(pinVerificationResult);
+    }
+
+    ChangePinResponseDTO changePin(PinOffsetHelper pinOffsetHelper, ChangePinRequestDTO request) throws GeneralSecurityException {
+        String newOffset = pinOffsetHelper.changePin(HexFormat.of().parseHex(request.oldPinBlock()), HexFormat.of().parseHex(request.newPinBlock()),
+            request.pan(), request.decimalizationTable(), request.pinValidationData(), request.pinLength(), request.offset());
+
+        return new ChangePinResponseDTO(newOffset != null, newOffset);
+    }
+}
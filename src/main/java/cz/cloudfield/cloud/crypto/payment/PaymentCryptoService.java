@@ -1,12 +1,59 @@
 package cz.cloudfield.cloud.crypto.payment;
 
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.util.List;
 
 public interface PaymentCryptoService {
 
     VerifyArqcResponseDTO verifyArqc(VerifyArqcRequestDTO request) throws GeneralSecurityException;
 
+    /**
+     * Verifies ARQCs of a batch of requests, every IMK is resolved once per batch.
+     *
+     * @return results in order of requests, failure of one item does not fail the batch
+     */
+    List<BatchResultDTO<VerifyArqcResponseDTO>> verifyArqc(List<VerifyArqcRequestDTO> requests);
+
+    /**
+     * Verifies ARQC of raw transaction data, e.g. decoded from a binary request without copying.
+     *
+     * @param atc             - Application Transaction Counter (2 bytes)
+     * @param transactionData - transaction data without padding, read between position and limit
+     */
+    boolean verifyArqc(String imkAlias, String pan, String panSeqNumber, byte[] atc, ByteBuffer transactionData, byte[] arqc) throws GeneralSecurityException;
+
     String calculateOffset(CalculateOffsetRequestDTO request) throws GeneralSecurityException;
 
+    /**
+     * @param pinBlock - ISO format 0 PIN block encrypted by ZPK (8 bytes)
+     */
+    String calculateOffset(String zpkAlias, byte[] pinBlock, String pvkAlias, String pan, String pinValidationData, String decimalizationTable, int pinLength) throws GeneralSecurityException;
+
     VerifyPinResponseDTO verifyPin(VerifyPinRequestDTO request) throws GeneralSecurityException;
+
+    /**
+     * @param pinBlock - ISO format 0 PIN block encrypted by ZPK (8 bytes)
+     */
+    boolean verifyPin(String zpkAlias, byte[] pinBlock, String pvkAlias, String pan, String pinValidationData, String decimalizationTable, int pinLength, String offset) throws GeneralSecurityException;
+
+    /**
+     * Verifies PINs of a batch of requests, every distinct pair of PVK and ZPK is resolved once per batch.
+     *
+     * @return results in order of requests, failure of one item does not fail the batch
+     */
+    List<BatchResultDTO<VerifyPinResponseDTO>> verifyPin(List<VerifyPinRequestDTO> requests);
+
+    /**
+     * Verifies the old PIN against its offset and calculates offset of the new PIN in one pass -
+     * keys are resolved and the natural PIN is calculated only once.
+     */
+    ChangePinResponseDTO changePin(ChangePinRequestDTO request) throws GeneralSecurityException;
+
+    /**
+     * @param oldPinBlock - ISO format 0 PIN block of the current PIN encrypted by ZPK (8 bytes)
+     * @param newPinBlock - ISO format 0 PIN block of the new PIN encrypted by ZPK (8 bytes)
+     * @return offset of the new PIN, {@code null} when the current PIN does not match the offset
+     */
+    String changePin(String zpkAlias, byte[] oldPinBlock, byte[] newPinBlock, String pvkAlias, String pan, String pinValidationData, String decimalizationTable, int pinLength, String offset) throws GeneralSecurityException;
 }
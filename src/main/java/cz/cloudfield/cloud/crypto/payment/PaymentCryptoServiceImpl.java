@@ -1,21 +1,39 @@
 package cz.cloudfield.cloud.crypto.payment;
 
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
 import cz.cloudfield.cloud.crypto.key.KeyManager;
-import cz.cloudfield.cloud.crypto.utils.CryptogramCalculator;
 import cz.cloudfield.cloud.crypto.utils.PinOffsetHelper;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
-import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 @Service
 public class PaymentCryptoServiceImpl implements PaymentCryptoService {
 
     private final KeyManager keyManager;
-
-    public PaymentCryptoServiceImpl(KeyManager keyManager) {
+    private final PaymentCryptoOperations operations;
+    private final ForkJoinPool batchPool;
+    private final int maxBatchSize;
+
+    public PaymentCryptoServiceImpl(
+        KeyManager keyManager,
+        UdkCache udkCache,
+        @Qualifier(PaymentBatchConfiguration.BATCH_POOL) ForkJoinPool batchPool,
+        PaymentBatchProperties batchProperties,
+        CryptoMetrics metrics) {
         this.keyManager = keyManager;
+        this.operations = new PaymentCryptoOperations(udkCache, metrics);
+        this.batchPool = batchPool;
+        this.maxBatchSize = batchProperties.maxBatchSize();
     }
 
 
@@ -23,48 +41,125 @@ public class PaymentCryptoServiceImpl implements PaymentCryptoService {
     public VerifyArqcResponseDTO verifyArqc(VerifyArqcRequestDTO request) throws GeneralSecurityException {
         SecretKey imk = keyManager.getKey(request.imkAlias(), "01");
 
-        byte[] calculated = CryptogramCalculator.calculateARQC(imk, request.pan(), request.panSeqNumber(), request.emvTransactionData(), request.atc());
+        return operations.verifyArqc(imk, request);
+    }
 
-        boolean arqcVerificationResult = MessageDigest.isEqual(calculated, request.arqc());
+    @Override
+    public List<BatchResultDTO<VerifyArqcResponseDTO>> verifyArqc(List<VerifyArqcRequestDTO> requests) {
+        return processBatch(requests, VerifyArqcRequestDTO::imkAlias, imkAlias -> keyManager.getKey(imkAlias, "01"), operations::verifyArqc);
+    }
 
-        return new VerifyArqcResponseDTO(arqcVerificationResult);
+    @Override
+    public boolean verifyArqc(String imkAlias, String pan, String panSeqNumber, byte[] atc, ByteBuffer transactionData, byte[] arqc) throws GeneralSecurityException {
+        SecretKey imk = keyManager.getKey(imkAlias, "01");
+
+        return operations.verifyArqc(imk, imkAlias, pan, panSeqNumber, atc, transactionData, arqc);
     }
 
     @Override
     public String calculateOffset(CalculateOffsetRequestDTO request) throws GeneralSecurityException {
-        SecretKey pvk = keyManager.getKey(request.pvkAlias(), "01");
-        SecretKey zpk = keyManager.getKey(request.zpkAlias(), "01");
+        return operations.calculateOffset(pinOffsetHelper(PaymentCryptoOperations.CALCULATE_OFFSET, request.pvkAlias(), request.zpkAlias()), request);
+    }
+
+    @Override
+    public String calculateOffset(String zpkAlias, byte[] pinBlock, String pvkAlias, String pan, String pinValidationData, String decimalizationTable, int pinLength) throws GeneralSecurityException {
+        PinOffsetHelper pinOffsetHelper = pinOffsetHelper(PaymentCryptoOperations.CALCULATE_OFFSET, pvkAlias, zpkAlias);
+
+        return pinOffsetHelper.calculateOffset(pinBlock, pan, decimalizationTable, pinValidationData, pinLength);
+    }
+
+    @Override
+    public VerifyPinResponseDTO verifyPin(VerifyPinRequestDTO request) throws GeneralSecurityException {
+        return operations.verifyPin(pinOffsetHelper(PaymentCryptoOperations.VERIFY_PIN, request.pvkAlias(), request.zpkAlias()), request);
+    }
 
-        PinOffsetHelper pinOffsetHelper = new PinOffsetHelper(pvk, zpk);
+    @Override
+    public boolean verifyPin(String zpkAlias, byte[] pinBlock, String pvkAlias, String pan, String pinValidationData, String decimalizationTable, int pinLength, String offset) throws GeneralSecurityException {
+        PinOffsetHelper pinOffsetHelper = pinOffsetHelper(PaymentCryptoOperations.VERIFY_PIN, pvkAlias, zpkAlias);
 
-        // Extract entered PIN from the PIN block
-        String enteredPIN = pinOffsetHelper.extractPinFromPinBlock(request.pinBlock(), request.pan());
+        return pinOffsetHelper.verifyPin(pinBlock, pan, decimalizationTable, pinValidationData, pinLength, offset);
+    }
 
-        // Calculate natural PIN
-        String naturalPin = pinOffsetHelper.calculateNaturalPin(request.pan(), request.decimalizationTable(), request.pinValidationData(), request.pinLength());
+    @Override
+    public List<BatchResultDTO<VerifyPinResponseDTO>> verifyPin(List<VerifyPinRequestDTO> requests) {
+        return processBatch(requests, request -> new PinKeyAliases(request.pvkAlias(), request.zpkAlias()),
+            aliases -> pinOffsetHelper(PaymentCryptoOperations.VERIFY_PIN, aliases.pvkAlias(), aliases.zpkAlias()),
+            operations::verifyPin);
+    }
 
-        // Offset calculation
-        return pinOffsetHelper.calculateOffset(naturalPin, enteredPIN);
+    @Override
+    public ChangePinResponseDTO changePin(ChangePinRequestDTO request) throws GeneralSecurityException {
+        return operations.changePin(pinOffsetHelper(PaymentCryptoOperations.CHANGE_PIN, request.pvkAlias(), request.zpkAlias()), request);
     }
 
     @Override
-    public VerifyPinResponseDTO verifyPin(VerifyPinRequestDTO request) throws GeneralSecurityException {
-        SecretKey pvk = keyManager.getKey(request.pvkAlias(), "01");
-        SecretKey zpk = keyManager.getKey(request.zpkAlias(), "01");
+    public String changePin(String zpkAlias, byte[] oldPinBlock, byte[] newPinBlock, String pvkAlias, String pan, String pinValidationData, String decimalizationTable, int pinLength, String offset) throws GeneralSecurityException {
+        PinOffsetHelper pinOffsetHelper = pinOffsetHelper(PaymentCryptoOperations.CHANGE_PIN, pvkAlias, zpkAlias);
+
+        return pinOffsetHelper.changePin(oldPinBlock, newPinBlock, pan, decimalizationTable, pinValidationData, pinLength, offset);
+    }
 
-        PinOffsetHelper pinOffsetHelper = new PinOffsetHelper(pvk, zpk);
+    private PinOffsetHelper pinOffsetHelper(String operation, String pvkAlias, String zpkAlias) {
+        SecretKey pvk = keyManager.getKey(pvkAlias, "01");
+        SecretKey zpk = keyManager.getKey(zpkAlias, "01");
 
-        // Extract entered PIN from the PIN block
-        String enteredPin = pinOffsetHelper.extractPinFromPinBlock(request.pinBlock(), request.pan());
+        return operations.pinOffsetHelper(operation, pvk, pvkAlias, zpk, zpkAlias);
+    }
 
-        // Calculate natural PIN
-        String naturalPin = pinOffsetHelper.calculateNaturalPin(request.pan(), request.decimalizationTable(), request.pinValidationData(), request.pinLength());
+    /**
+     * Processes batch items in parallel on the batch pool.
+     *
+     * @param requests  - batch items
+     * @param keysAlias - aliases of keys needed by an item, items with equal aliases share resolved keys
+     * @param keys      - resolves keys of given aliases, called once per distinct aliases
+     * @param operation - processes one item with resolved keys
+     * @return results in order of requests, failure of an item (or of its keys) does not fail the batch
+     */
+    private <R, A, K, T> List<BatchResultDTO<T>> processBatch(List<R> requests, Function<R, A> keysAlias, Function<A, K> keys, BatchOperation<K, R, T> operation) {
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch size " + requests.size() + " exceeds maximum " + maxBatchSize);
+        }
+
+        // Resolve keys once per batch, a missing key fails only the items which use it
+        Map<A, K> resolvedKeys = new HashMap<>();
+        Map<A, RuntimeException> keyErrors = new HashMap<>();
+        for (R request : requests) {
+            A alias = keysAlias.apply(request);
+            if (!resolvedKeys.containsKey(alias) && !keyErrors.containsKey(alias)) {
+                try {
+                    resolvedKeys.put(alias, keys.apply(alias));
+                } catch (RuntimeException e) {
+                    keyErrors.put(alias, e);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        BatchResultDTO<T>[] results = new BatchResultDTO[requests.size()];
+        batchPool.submit(() -> IntStream.range(0, requests.size()).parallel().forEach(i -> {
+            R request = requests.get(i);
+            A alias = keysAlias.apply(request);
+            K key = resolvedKeys.get(alias);
+            if (key == null) {
+                results[i] = BatchResultDTO.failure(keyErrors.get(alias));
+                return;
+            }
+            try {
+                results[i] = BatchResultDTO.success(operation.apply(key, request));
+            } catch (GeneralSecurityException | RuntimeException e) {
+                results[i] = BatchResultDTO.failure(e);
+            }
+        })).join();
+
+        return List.of(results);
+    }
 
-        // Calculate Expected PIN
-        String expectedPin = pinOffsetHelper.calculateExpectedPin(naturalPin, request.offset());
+    @FunctionalInterface
+    private interface BatchOperation<K, R, T> {
 
-        boolean pinVerificationResult = enteredPin.equals(expectedPin);
+        T apply(K key, R request) throws GeneralSecurityException;
+    }
 
-        return new VerifyPinResponseDTO(pinVerificationResult);
+    private record PinKeyAliases(String pvkAlias, String zpkAlias) {
     }
 }
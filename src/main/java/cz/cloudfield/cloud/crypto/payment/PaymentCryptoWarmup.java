@@ -0,0 +1,155 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import cz.cloudfield.cloud.crypto.key.KeyManager;
+import cz.cloudfield.cloud.crypto.utils.CryptoUtils;
+import cz.cloudfield.cloud.crypto.utils.CryptogramCalculator;
+import cz.cloudfield.cloud.crypto.utils.PinOffsetHelper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up the application before it reports readiness - application runners complete before
+ * {@code ReadinessState.ACCEPTING_TRAFFIC} is published, so the readiness probe stays down until warmup finishes.
+ *
+ * <p>
+ * Configured keys, or the keys loaded most often recently, are preloaded into the key cache (which also initializes
+ * the database connection pool and the Key Vault clients), then synthetic ARQC and PIN operations with random keys
+ * trigger security provider registration and JIT compilation of the crypto code. Duration is logged and recorded as {@code payment-crypto.warmup}.
+ * </p>
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class PaymentCryptoWarmup implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(PaymentCryptoWarmup.class);
+
+    private static final String[] PANS = {"6203011199415646", "8621249928562171", "3205984555533619", "2377743501502819123"};
+    private static final String DECIMALIZATION_TABLE = "0123456789012345";
+    private static final String PIN_VALIDATION_DATA = "123456N12345";
+    private static final int PIN_LENGTH = 4;
+
+    private final KeyManager keyManager;
+    private final WarmupProperties properties;
+    private final Timer warmupTimer;
+
+    public PaymentCryptoWarmup(KeyManager keyManager, WarmupProperties properties, MeterRegistry meterRegistry) {
+        this.keyManager = keyManager;
+        this.properties = properties;
+        this.warmupTimer = Timer.builder("payment-crypto.warmup")
+            .description("Duration of warmup before readiness")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws GeneralSecurityException {
+        if (!properties.enabled()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int preloadedKeys = preloadKeys();
+        long keysDone = System.nanoTime();
+        runSyntheticOperations(properties.iterations());
+        long end = System.nanoTime();
+
+        warmupTimer.record(end - start, TimeUnit.NANOSECONDS);
+        logger.info("Warmup finished in {} ms - {} keys preloaded in {} ms, {} synthetic operations in {} ms.",
+            (end - start) / 1_000_000, preloadedKeys, (keysDone - start) / 1_000_000, properties.iterations(), (end - keysDone) / 1_000_000);
+    }
+
+    /**
+     * Loads keys in parallel, a key which cannot be loaded is logged and skipped.
+     *
+     * @return number of preloaded keys
+     */
+    private int preloadKeys() {
+        List<String> aliases = properties.keys().isEmpty()
+            ? keyManager.findMostLoadedAliases(properties.keyVersion(), properties.maxKeys())
+            : properties.keys();
+
+        AtomicInteger preloaded = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String alias : aliases) {
+                executor.execute(() -> {
+                    try {
+                        keyManager.getKey(alias, properties.keyVersion());
+                        preloaded.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        logger.warn("Key {} was not preloaded: {}", alias, e.getMessage());
+                    }
+                });
+            }
+        }
+        return preloaded.get();
+    }
+
+    private static void runSyntheticOperations(int iterations) throws GeneralSecurityException {
+        SecureRandom random = new SecureRandom();
+        SecretKey imk = randomKey(random, 32, "AES");
+        SecretKey pvk = randomKey(random, 16, "DESede");
+        SecretKey zpk = randomKey(random, 16, "DESede");
+        byte[] cryptogramData = new byte[29];
+        random.nextBytes(cryptogramData);
+
+        try {
+            PinOffsetHelper pinOffsetHelper = new PinOffsetHelper(pvk, zpk);
+            byte[][] pinBlocks = new byte[PANS.length][];
+            for (int i = 0; i < PANS.length; i++) {
+                pinBlocks[i] = pinBlock(zpk, PANS[i]);
+            }
+
+            for (int i = 0; i < iterations; i++) {
+                String pan = PANS[i % PANS.length];
+                byte[] atc = {(byte) (i >> 8), (byte) i};
+
+                CryptogramCalculator.calculateARQC(imk, pan, "00", ByteBuffer.wrap(cryptogramData), atc);
+
+                String offset = pinOffsetHelper.calculateOffset(pinBlocks[i % PANS.length], pan, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH);
+                if (!pinOffsetHelper.verifyPin(pinBlocks[i % PANS.length], pan, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH, offset)) {
+                    throw new IllegalStateException("Warmup PIN verification failed");
+                }
+            }
+        } finally {
+            // synthetic keys must not occupy the cipher pool
+            CryptoUtils.evictCiphers(imk);
+            CryptoUtils.evictCiphers(pvk);
+            CryptoUtils.evictCiphers(zpk);
+        }
+    }
+
+    private static SecretKey randomKey(SecureRandom random, int length, String algorithm) {
+        byte[] key = new byte[length];
+        random.nextBytes(key);
+        return new SecretKeySpec(key, algorithm);
+    }
+
+    /**
+     * ISO format 0 PIN block of PIN 1234.
+     */
+    private static byte[] pinBlock(SecretKey zpk, String pan) throws GeneralSecurityException {
+        byte[] pinField = HexFormat.of().parseHex("041234FFFFFFFFFF");
+        byte[] panField = HexFormat.of().parseHex("0000" + pan.substring(pan.length() - 13, pan.length() - 1));
+        for (int i = 0; i < pinField.length; i++) {
+            pinField[i] ^= panField[i];
+        }
+        return CryptoUtils.encrypt(zpk, pinField);
+    }
+}
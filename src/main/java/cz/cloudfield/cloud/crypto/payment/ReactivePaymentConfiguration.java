@@ -0,0 +1,18 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+public class ReactivePaymentConfiguration {
+
+    public static final String CRYPTO_SCHEDULER = "paymentCryptoScheduler";
+
+    @Bean(name = CRYPTO_SCHEDULER, destroyMethod = "dispose")
+    public Scheduler paymentCryptoScheduler(ReactivePaymentProperties properties) {
+        int parallelism = properties.parallelism() > 0 ? properties.parallelism() : Runtime.getRuntime().availableProcessors();
+        return Schedulers.newParallel("payment-crypto", parallelism);
+    }
+}
@@ -0,0 +1,55 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Reactive variant of {@link PaymentCryptoController}. The request thread is released as soon as the handler returns,
+ * the response is written when the {@link Mono} or {@link Flux} completes.
+ */
+@RestController
+@RequestMapping("/api/reactive/payment-crypto")
+public class ReactivePaymentCryptoController {
+
+    private final ReactivePaymentCryptoService paymentCryptoService;
+
+    public ReactivePaymentCryptoController(ReactivePaymentCryptoService paymentCryptoService) {
+        this.paymentCryptoService = paymentCryptoService;
+    }
+
+    @PostMapping("/verify-arqc")
+    public Mono<VerifyArqcResponseDTO> verifyArqc(@RequestBody VerifyArqcRequestDTO request) {
+        return paymentCryptoService.verifyArqc(request);
+    }
+
+    @PostMapping("/verify-arqc/batch")
+    public Flux<BatchResultDTO<VerifyArqcResponseDTO>> verifyArqcBatch(@RequestBody List<VerifyArqcRequestDTO> requests) {
+        return paymentCryptoService.verifyArqc(requests);
+    }
+
+    @PostMapping("/offset")
+    public Mono<String> calculateOffset(@RequestBody CalculateOffsetRequestDTO request) {
+        return paymentCryptoService.calculateOffset(request);
+    }
+
+    @PostMapping("/verify-pin")
+    public Mono<VerifyPinResponseDTO> verifyPin(@RequestBody VerifyPinRequestDTO request) {
+        return paymentCryptoService.verifyPin(request);
+    }
+
+    @PostMapping("/verify-pin/batch")
+    public Flux<BatchResultDTO<VerifyPinResponseDTO>> verifyPinBatch(@RequestBody List<VerifyPinRequestDTO> requests) {
+        return paymentCryptoService.verifyPin(requests);
+    }
+
+    @PostMapping("/change-pin")
+    public Mono<ChangePinResponseDTO> changePin(@RequestBody ChangePinRequestDTO request) {
+        return paymentCryptoService.changePin(request);
+    }
+}
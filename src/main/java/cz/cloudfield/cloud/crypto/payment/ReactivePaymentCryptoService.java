@@ -0,0 +1,39 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking variant of {@link PaymentCryptoService}.
+ */
+public interface ReactivePaymentCryptoService {
+
+    Mono<VerifyArqcResponseDTO> verifyArqc(VerifyArqcRequestDTO request);
+
+    /**
+     * Verifies ARQCs of a batch of requests, every IMK is resolved once per batch.
+     *
+     * @return results in order of requests, failure of one item does not fail the batch;
+     * error with {@link IllegalArgumentException} when the batch exceeds {@link PaymentBatchProperties#maxBatchSize()}
+     */
+    Flux<BatchResultDTO<VerifyArqcResponseDTO>> verifyArqc(List<VerifyArqcRequestDTO> requests);
+
+    Mono<String> calculateOffset(CalculateOffsetRequestDTO request);
+
+    Mono<VerifyPinResponseDTO> verifyPin(VerifyPinRequestDTO request);
+
+    /**
+     * Verifies PINs of a batch of requests, every distinct pair of PVK and ZPK is resolved once per batch.
+     *
+     * @return results in order of requests, failure of one item does not fail the batch;
+     * error with {@link IllegalArgumentException} when the batch exceeds {@link PaymentBatchProperties#maxBatchSize()}
+     */
+    Flux<BatchResultDTO<VerifyPinResponseDTO>> verifyPin(List<VerifyPinRequestDTO> requests);
+
+    /**
+     * Verifies the old PIN against its offset and calculates offset of the new PIN in one pass.
+     */
+    Mono<ChangePinResponseDTO> changePin(ChangePinRequestDTO request);
+}
@@ -0,0 +1,126 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.key.ReactiveKeyManager;
+import cz.cloudfield.cloud.crypto.utils.PinOffsetHelper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Keys are resolved by {@link ReactiveKeyManager} without blocking the calling thread, MAC and PIN computations
+ * run on the bounded {@link ReactivePaymentConfiguration#CRYPTO_SCHEDULER} scheduler. The compute step is shared
+ * with {@link PaymentCryptoServiceImpl}.
+ */
+@Service
+public class ReactivePaymentCryptoServiceImpl implements ReactivePaymentCryptoService {
+
+    private final ReactiveKeyManager keyManager;
+    private final PaymentCryptoOperations operations;
+    private final Scheduler cryptoScheduler;
+    private final int maxBatchSize;
+    private final int maxInFlight;
+
+    public ReactivePaymentCryptoServiceImpl(
+        ReactiveKeyManager keyManager,
+        UdkCache udkCache,
+        @Qualifier(ReactivePaymentConfiguration.CRYPTO_SCHEDULER) Scheduler cryptoScheduler,
+        PaymentBatchProperties batchProperties,
+        ReactivePaymentProperties reactiveProperties,
+        CryptoMetrics metrics) {
+        this.keyManager = keyManager;
+        this.operations = new PaymentCryptoOperations(udkCache, metrics);
+        this.cryptoScheduler = cryptoScheduler;
+        this.maxBatchSize = batchProperties.maxBatchSize();
+        this.maxInFlight = reactiveProperties.maxInFlight();
+    }
+
+    @Override
+    public Mono<VerifyArqcResponseDTO> verifyArqc(VerifyArqcRequestDTO request) {
+        return keyManager.getKey(request.imkAlias(), "01")
+            .flatMap(imk -> compute(() -> operations.verifyArqc(imk, request)));
+    }
+
+    @Override
+    public Flux<BatchResultDTO<VerifyArqcResponseDTO>> verifyArqc(List<VerifyArqcRequestDTO> requests) {
+        return processBatch(requests, VerifyArqcRequestDTO::imkAlias, imkAlias -> keyManager.getKey(imkAlias, "01"), operations::verifyArqc);
+    }
+
+    @Override
+    public Mono<String> calculateOffset(CalculateOffsetRequestDTO request) {
+        return pinOffsetHelper(PaymentCryptoOperations.CALCULATE_OFFSET, new PinKeyAliases(request.pvkAlias(), request.zpkAlias()))
+            .flatMap(pinOffsetHelper -> compute(() -> operations.calculateOffset(pinOffsetHelper, request)));
+    }
+
+    @Override
+    public Mono<VerifyPinResponseDTO> verifyPin(VerifyPinRequestDTO request) {
+        return pinOffsetHelper(PaymentCryptoOperations.VERIFY_PIN, new PinKeyAliases(request.pvkAlias(), request.zpkAlias()))
+            .flatMap(pinOffsetHelper -> compute(() -> operations.verifyPin(pinOffsetHelper, request)));
+    }
+
+    @Override
+    public Flux<BatchResultDTO<VerifyPinResponseDTO>> verifyPin(List<VerifyPinRequestDTO> requests) {
+        return processBatch(requests, request -> new PinKeyAliases(request.pvkAlias(), request.zpkAlias()),
+            aliases -> pinOffsetHelper(PaymentCryptoOperations.VERIFY_PIN, aliases), operations::verifyPin);
+    }
+
+    @Override
+    public Mono<ChangePinResponseDTO> changePin(ChangePinRequestDTO request) {
+        return pinOffsetHelper(PaymentCryptoOperations.CHANGE_PIN, new PinKeyAliases(request.pvkAlias(), request.zpkAlias()))
+            .flatMap(pinOffsetHelper -> compute(() -> operations.changePin(pinOffsetHelper, request)));
+    }
+
+    private Mono<PinOffsetHelper> pinOffsetHelper(String operation, PinKeyAliases aliases) {
+        return Mono.zip(keyManager.getKey(aliases.pvkAlias(), "01"), keyManager.getKey(aliases.zpkAlias(), "01"),
+            (pvk, zpk) -> operations.pinOffsetHelper(operation, pvk, aliases.pvkAlias(), zpk, aliases.zpkAlias()));
+    }
+
+    private <T> Mono<T> compute(Callable<T> operation) {
+        return Mono.fromCallable(operation).subscribeOn(cryptoScheduler);
+    }
+
+    /**
+     * Processes batch items concurrently, at most {@link ReactivePaymentProperties#maxInFlight()} at a time,
+     * so a large batch does not flood the crypto scheduler. Oversized batches are rejected before any item is processed.
+     *
+     * @param requests  - batch items
+     * @param keysAlias - aliases of keys needed by an item, items with equal aliases share resolved keys
+     * @param keys      - resolves keys of given aliases, subscribed once per distinct aliases
+     * @param operation - processes one item with resolved keys
+     * @return results in order of requests, failure of an item (or of its keys) does not fail the batch
+     */
+    private <R, A, K, T> Flux<BatchResultDTO<T>> processBatch(List<R> requests, Function<R, A> keysAlias, Function<A, Mono<K>> keys, BatchOperation<K, R, T> operation) {
+        if (requests.size() > maxBatchSize) {
+            return Flux.error(new IllegalArgumentException("Batch size " + requests.size() + " exceeds maximum " + maxBatchSize));
+        }
+
+        return Flux.defer(() -> {
+            // Resolve keys once per batch, a missing key fails only the items which use it
+            Map<A, Mono<K>> resolvedKeys = new ConcurrentHashMap<>();
+
+            return Flux.fromIterable(requests).flatMapSequential(request ->
+                resolvedKeys.computeIfAbsent(keysAlias.apply(request), alias -> keys.apply(alias).cache())
+                    .flatMap(key -> compute(() -> operation.apply(key, request)))
+                    .map(BatchResultDTO::success)
+                    .onErrorResume(Exception.class, e -> Mono.just(BatchResultDTO.failure(e))), maxInFlight);
+        });
+    }
+
+    @FunctionalInterface
+    private interface BatchOperation<K, R, T> {
+
+        T apply(K key, R request) throws GeneralSecurityException;
+    }
+
+    private record PinKeyAliases(String pvkAlias, String zpkAlias) {
+    }
+}
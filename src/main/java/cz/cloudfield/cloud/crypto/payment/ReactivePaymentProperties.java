@@ -0,0 +1,15 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param parallelism - number of threads computing MACs and PINs of reactive requests, 0 means number of available processors
+ * @param maxInFlight - maximum number of items of one batch request processed concurrently
+ */
+@ConfigurationProperties("payment-crypto.reactive")
+public record ReactivePaymentProperties(
+    @DefaultValue("0") int parallelism,
+    @DefaultValue("256") int maxInFlight
+) {
+}
@@ -1,59 +1,61 @@
 package cz.cloudfield.cloud.crypto.payment;
 
-import javax.crypto.Cipher;
+import cz.cloudfield.cloud.crypto.utils.TR31KeyBlock;
+
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
-import java.security.Security;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import java.util.Arrays;
 
-import org.bouncycastle.crypto.macs.CMac;
-import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.util.encoders.Hex;
 
 public class TR31KeyBlockWithMACExample {
 
     public static void main(String[] args) throws Exception {
 
-        // Step 0: Add Bouncy Castle Provider
-        Security.addProvider(new BouncyCastleProvider());
-
         // Step 1: Define the TDES key and the AES KEK
         // Example TDES key (16 bytes for double-length key)
         String tdesKeyHex = "0123456789ABCDEFFEDCBA9876543210";
         byte[] tdesKeyBytes = Hex.decode(tdesKeyHex);
-        SecretKey tdesKey = new SecretKeySpec(tdesKeyBytes, "DESede");
 
         // Example AES KEK (32 bytes for 256-bit key)
         String aesKekHex = "000102030405060708090A0B0C0D0E0F"
             + "101112131415161718191A1B1C1D1E1F";
-        byte[] aesKekBytes = Hex.decode(aesKekHex);
-        SecretKey aesKek = new SecretKeySpec(aesKekBytes, "AES");
+        SecretKey aesKek = new SecretKeySpec(Hex.decode(aesKekHex), "AES");
 
         // Step 2: Construct the TR-31 header
         byte[] header = constructTR31Header();
 
-        // Step 3: Wrap the TDES key using AES Key Wrap
-        byte[] wrappedKey = wrapKeyUsingAESKeyWrap(tdesKeyBytes, aesKekBytes);
-
-        // Step 4: Calculate the MAC over the header and wrapped key
-        byte[] mac = calculateCMAC(header, wrappedKey, aesKekBytes);
+        // Step 3: Wrap the TDES key using AES Key Wrap and calculate the MAC over the header and wrapped key
+        TR31KeyBlock keyBlock = TR31KeyBlock.create(header, tdesKeyBytes, aesKek);
 
-        // Step 5: Assemble the key block (header + wrapped key + MAC)
-        byte[] keyBlock = concatenate(header, wrappedKey, mac);
-
-        // Step 6: Display the TR-31 Key Block in hexadecimal
-        String keyBlockHex = Hex.toHexString(keyBlock).toUpperCase();
+        // Step 4: Display the TR-31 Key Block (header + wrapped key + MAC) in hexadecimal
+        String keyBlockHex = Hex.toHexString(keyBlock.encode()).toUpperCase();
         System.out.println("TR-31 Key Block (Hex):");
         System.out.println(keyBlockHex);
 
         // Optional: Verify the MAC
-        boolean macValid = verifyCMAC(header, wrappedKey, mac, aesKekBytes);
+        boolean macValid = TR31KeyBlock.parse(Hex.decode(keyBlockHex)).verifyMac(aesKek);
         System.out.println("MAC Verification Result: " + (macValid ? "Valid" : "Invalid"));
     }
 
     // Function to construct the TR-31 header
     public static byte[] constructTR31Header() {
+        return constructTR31Header("D0", 'T');
+    }
+
+    /**
+     * Header of a double-length (16 bytes) key.
+     *
+     * @param keyUsage  - e.g. 'D0' data encryption, 'P0' PIN encryption, 'V1' PIN verification, 'E0' EMV master key
+     * @param algorithm - 'T' TDES, 'A' AES
+     */
+    public static byte[] constructTR31Header(String keyUsage, char algorithm) {
+        return constructTR31Header(keyUsage, algorithm, 16);
+    }
+
+    /**
+     * @param keyLength - length of the key in bytes, 16, 24 or 32
+     */
+    public static byte[] constructTR31Header(String keyUsage, char algorithm, int keyLength) {
         // TR-31 header is 16 bytes long
         byte[] header = new byte[16];
 
@@ -65,15 +67,15 @@ public class TR31KeyBlockWithMACExample {
         header[2] = (byte) '0';
         header[3] = (byte) '4';
 
-        // Key Usage: 'D0' (2 bytes) - Data encryption/decryption key
-        header[4] = (byte) 'D';
-        header[5] = (byte) '0';
+        // Key Usage (2 bytes)
+        header[4] = (byte) keyUsage.charAt(0);
+        header[5] = (byte) keyUsage.charAt(1);
 
-        // Algorithm Identifier: 'T' (1 byte) - TDES key
-        header[6] = (byte) 'T';
+        // Algorithm Identifier (1 byte)
+        header[6] = (byte) algorithm;
 
-        // Key Length: '1' (1 byte) - Double-length key (16 bytes)
-        header[7] = (byte) '1';
+        // Key Length (1 byte): '1' 16 bytes, '2' 24 bytes, '3' 32 bytes
+        header[7] = (byte) ('0' + keyLength / 8 - 1);
 
         // Protection Mode: 'U0' (2 bytes) - AES Key Wrap with AES KEK
         header[8] = (byte) 'U';
@@ -86,59 +88,4 @@ public class TR31KeyBlockWithMACExample {
 
         return header;
     }
-
-    // Function to wrap the key using AES Key Wrap
-    public static byte[] wrapKeyUsingAESKeyWrap(byte[] keyToWrap, byte[] kekBytes) throws Exception {
-        // Initialize the cipher for AES Key Wrap
-        SecretKey kek = new SecretKeySpec(kekBytes, "AES");
-        Cipher cipher = Cipher.getInstance("AESWrap", "BC"); // 'BC' for Bouncy Castle
-        cipher.init(Cipher.WRAP_MODE, kek);
-
-        // Wrap the key
-        byte[] wrappedKey = cipher.wrap(new SecretKeySpec(keyToWrap, "DESede"));
-        return wrappedKey;
-    }
-
-    // Function to calculate CMAC over the header and wrapped key
-    public static byte[] calculateCMAC(byte[] header, byte[] wrappedKey, byte[] macKeyBytes) throws Exception {
-        // Initialize CMAC with AES
-        KeyParameter key = new KeyParameter(macKeyBytes);
-        CMac cmac = new CMac(new org.bouncycastle.crypto.engines.AESEngine());
-        cmac.init(key);
-
-        // Update CMAC with header and wrapped key
-        cmac.update(header, 0, header.length);
-        cmac.update(wrappedKey, 0, wrappedKey.length);
-
-        // Finalize CMAC calculation
-        byte[] mac = new byte[16]; // CMAC output is 16 bytes for AES
-        cmac.doFinal(mac, 0);
-
-        // TR-31 specifies an 8-byte MAC, so truncate if necessary
-        byte[] truncatedMac = Arrays.copyOf(mac, 8);
-        return truncatedMac;
-    }
-
-    // Function to verify the CMAC
-    public static boolean verifyCMAC(byte[] header, byte[] wrappedKey, byte[] receivedMac, byte[] macKeyBytes) throws Exception {
-        byte[] calculatedMac = calculateCMAC(header, wrappedKey, macKeyBytes);
-        return Arrays.equals(receivedMac, calculatedMac);
-    }
-
-    // Helper function to concatenate multiple byte arrays
-    public static byte[] concatenate(byte[]... arrays) {
-        int totalLength = 0;
-        for (byte[] arr : arrays) {
-            totalLength += arr.length;
-        }
-
-        byte[] result = new byte[totalLength];
-        int currentIndex = 0;
-        for (byte[] arr : arrays) {
-            System.arraycopy(arr, 0, result, currentIndex, arr.length);
-            currentIndex += arr.length;
-        }
-        return result;
-    }
 }
-
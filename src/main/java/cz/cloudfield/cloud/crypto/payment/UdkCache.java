@@ -0,0 +1,226 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import cz.cloudfield.cloud.crypto.utils.CryptoUtils;
+import cz.cloudfield.cloud.crypto.utils.CryptogramCalculator;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache of UDKs derived from IMK, PAN and PAN sequence number, so repeated ARQC verifications of a card need
+ * only the session key derivation and the MAC.
+ *
+ * <p>
+ * Every IMK alias has its own store bound to the IMK. When the key manager returns a different IMK instance,
+ * its check block (full encryption of a zero block) is compared with the bound one, and the store is wiped when
+ * the key material changed. A truncated key check value is not used, as its collisions would keep UDKs of
+ * a different IMK.
+ * </p>
+ */
+@Component
+public class UdkCache {
+
+    private static final int UDK_LENGTH = 32;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final boolean enabled;
+    private final int capacity;
+    private final Map<String, UdkStore> stores = new ConcurrentHashMap<>();
+
+    public UdkCache(UdkCacheProperties properties) {
+        this.enabled = properties.enabled();
+        this.capacity = properties.capacity();
+    }
+
+    /**
+     * Returns UDK of given card, derives it when it is not cached yet.
+     *
+     * @param imkAlias     - alias of the IMK, UDKs are cached per alias
+     * @param imk          - Issuer Master Key (IMK-AC)
+     * @param pan          - PAN of card
+     * @param panSeqNumber - PAN sequence number from card
+     * @return UDK {@link SecretKey}
+     * @throws GeneralSecurityException when derivation fails
+     * @see CryptogramCalculator#deriveUDK(String, String, SecretKey)
+     */
+    public SecretKey getUdk(String imkAlias, SecretKey imk, String pan, String panSeqNumber) throws GeneralSecurityException {
+        if (!enabled) {
+            return CryptogramCalculator.deriveUDK(pan, panSeqNumber, imk);
+        }
+
+        // Y (PAN || PANSeqNo) is exactly 16 bytes, so it is the cache key itself and no collision is possible
+        byte[] yValue = CryptogramCalculator.udkDerivationData(pan, panSeqNumber);
+        long high = (long) LONG_VIEW.get(yValue, 0);
+        long low = (long) LONG_VIEW.get(yValue, 8);
+
+        UdkStore store = store(imkAlias, imk);
+        byte[] udk = new byte[UDK_LENGTH];
+        if (!store.get(high, low, udk)) {
+            CryptogramCalculator.deriveUDK(imk, yValue, udk);
+            store.put(high, low, udk);
+        }
+
+        SecretKey udkKey = new SecretKeySpec(udk, "AES");
+        Arrays.fill(udk, (byte) 0);
+        return udkKey;
+    }
+
+    @PreDestroy
+    public void clear() {
+        stores.values().forEach(UdkStore::wipe);
+        stores.clear();
+    }
+
+    private UdkStore store(String imkAlias, SecretKey imk) throws GeneralSecurityException {
+        UdkStore store = stores.get(imkAlias);
+        if (store != null && store.imk == imk) {
+            return store;
+        }
+
+        byte[] checkBlock = checkBlock(imk);
+        return stores.compute(imkAlias, (alias, current) -> {
+            if (current != null && MessageDigest.isEqual(current.checkBlock, checkBlock)) {
+                // Same key material, e.g. the IMK was reloaded by the key manager
+                current.imk = imk;
+                return current;
+            }
+            if (current != null) {
+                current.wipe();
+            }
+            return new UdkStore(imk, checkBlock, capacity);
+        });
+    }
+
+    private static byte[] checkBlock(SecretKey key) throws GeneralSecurityException {
+        return CryptoUtils.initCipher(Cipher.ENCRYPT_MODE, key).doFinal(new byte[16]);
+    }
+
+    /**
+     * Fixed size, 4-way set associative store of UDKs. Keys are packed in a single array, every set evicts its
+     * least recently used entry. Sets are guarded by striped locks.
+     */
+    static final class UdkStore {
+
+        private static final int WAYS = 4;
+        private static final int MAX_STRIPES = 64;
+
+        volatile SecretKey imk;
+        final byte[] checkBlock;
+
+        private final int setMask;
+        private final long[] tags;
+        private final int[] stamps;
+        private final int[] clocks;
+        private final byte[] keys;
+        private final ReentrantLock[] locks;
+
+        UdkStore(SecretKey imk, byte[] checkBlock, int capacity) {
+            this.imk = imk;
+            this.checkBlock = checkBlock;
+
+            int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS - 1)) << 1;
+            this.setMask = sets - 1;
+            this.tags = new long[sets * WAYS * 2];
+            this.stamps = new int[sets * WAYS];
+            this.clocks = new int[sets];
+            this.keys = new byte[sets * WAYS * UDK_LENGTH];
+            this.locks = new ReentrantLock[Math.min(sets, MAX_STRIPES)];
+            for (int i = 0; i < locks.length; i++) {
+                locks[i] = new ReentrantLock();
+            }
+        }
+
+        boolean get(long high, long low, byte[] udk) {
+            int set = set(high, low);
+            ReentrantLock lock = locks[set & (locks.length - 1)];
+            lock.lock();
+            try {
+                int slot = find(set, high, low);
+                if (slot < 0) {
+                    return false;
+                }
+                stamps[slot] = ++clocks[set];
+                System.arraycopy(keys, slot * UDK_LENGTH, udk, 0, UDK_LENGTH);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(long high, long low, byte[] udk) {
+            int set = set(high, low);
+            ReentrantLock lock = locks[set & (locks.length - 1)];
+            lock.lock();
+            try {
+                int slot = find(set, high, low);
+                if (slot < 0) {
+                    slot = victim(set);
+                }
+                tags[slot * 2] = high;
+                tags[slot * 2 + 1] = low;
+                stamps[slot] = ++clocks[set];
+                System.arraycopy(udk, 0, keys, slot * UDK_LENGTH, UDK_LENGTH);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void wipe() {
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+            }
+            try {
+                Arrays.fill(keys, (byte) 0);
+                Arrays.fill(tags, 0L);
+                Arrays.fill(stamps, 0);
+            } finally {
+                for (ReentrantLock lock : locks) {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private int find(int set, long high, long low) {
+            for (int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+                if (stamps[slot] != 0 && tags[slot * 2] == high && tags[slot * 2 + 1] == low) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return empty slot of the set, or its least recently used one
+         */
+        private int victim(int set) {
+            int victim = set * WAYS;
+            for (int slot = victim; slot < (set + 1) * WAYS; slot++) {
+                if (stamps[slot] == 0) {
+                    return slot;
+                }
+                if (stamps[slot] - stamps[victim] < 0) {
+                    victim = slot;
+                }
+            }
+            return victim;
+        }
+
+        private int set(long high, long low) {
+            long hash = (high * 0x9E3779B97F4A7C15L) ^ (low * 0xC2B2AE3D27D4EB4FL);
+            return (int) (hash ^ (hash >>> 32)) & setMask;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * @param enabled  - cache UDKs derived during ARQC verification
+ * @param capacity - maximum number of UDKs cached per IMK, rounded up to a power of two
+ */
+@ConfigurationProperties("payment-crypto.udk-cache")
+public record UdkCacheProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue("65536") int capacity
+) {
+}
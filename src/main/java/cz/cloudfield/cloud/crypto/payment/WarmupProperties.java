@@ -0,0 +1,24 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * @param enabled    - warm up before the application reports readiness
+ * @param keys       - aliases of keys to preload, when empty the {@code maxKeys} keys loaded most recently and most
+ *                   often are preloaded
+ * @param keyVersion - version of preloaded keys
+ * @param maxKeys    - maximum number of preloaded keys
+ * @param iterations - number of synthetic ARQC and PIN operations run to trigger JIT compilation
+ */
+@ConfigurationProperties("payment-crypto.warmup")
+public record WarmupProperties(
+    @DefaultValue("true") boolean enabled,
+    @DefaultValue List<String> keys,
+    @DefaultValue("01") String keyVersion,
+    @DefaultValue("100") int maxKeys,
+    @DefaultValue("20000") int iterations
+) {
+}
@@ -0,0 +1,90 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of initialized ECB ciphers, keyed by identity of the {@link SecretKey}. A borrowed cipher already holds
+ * the expanded key schedule, so repeated operations with the same key object skip both the provider lookup and
+ * the key expansion.
+ *
+ * <p>
+ * Intended for long-lived keys only, every key gets its own pool entry. Keys are referenced weakly, ciphers of
+ * a key which is no longer used are dropped together with the key. Destroyed keys are rejected.
+ * The pool uses no thread locals nor monitors, so it is safe to use from virtual threads.
+ * </p>
+ */
+final class CipherPool {
+
+    private final Cache<SecretKey, KeyCiphers> ciphers;
+    private final int maximumIdlePerKey;
+
+    CipherPool(long maximumKeys, int maximumIdlePerKey) {
+        this.ciphers = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(maximumKeys)
+            .build();
+        this.maximumIdlePerKey = maximumIdlePerKey;
+    }
+
+    Cipher borrow(int mode, SecretKey key) throws GeneralSecurityException {
+        if (key.isDestroyed()) {
+            // no pool entry is created again for an evicted and destroyed key
+            throw new IllegalStateException("Key has been destroyed");
+        }
+        Cipher cipher = ciphers.get(key, k -> new KeyCiphers()).poll(mode);
+        if (cipher != null) {
+            return cipher;
+        }
+        return CryptoUtils.initCipher(mode, key);
+    }
+
+    void release(int mode, SecretKey key, Cipher cipher) {
+        KeyCiphers keyCiphers = ciphers.getIfPresent(key);
+        if (keyCiphers != null && !key.isDestroyed()) {
+            keyCiphers.offer(mode, cipher, maximumIdlePerKey);
+        }
+    }
+
+    void evict(SecretKey key) {
+        ciphers.invalidate(key);
+    }
+
+    void evictAll() {
+        ciphers.invalidateAll();
+    }
+
+    private static final class KeyCiphers {
+
+        private final Queue<Cipher> encryptors = new ConcurrentLinkedQueue<>();
+        private final Queue<Cipher> decryptors = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idle = new AtomicInteger();
+
+        private Queue<Cipher> queue(int mode) {
+            return mode == Cipher.ENCRYPT_MODE ? encryptors : decryptors;
+        }
+
+        Cipher poll(int mode) {
+            Cipher cipher = queue(mode).poll();
+            if (cipher != null) {
+                idle.decrementAndGet();
+            }
+            return cipher;
+        }
+
+        void offer(int mode, Cipher cipher, int maximumIdle) {
+            if (idle.incrementAndGet() > maximumIdle) {
+                idle.decrementAndGet();
+                return;
+            }
+            queue(mode).offer(cipher);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+/**
+ * Stages of payment crypto operations reported to {@link StageListener}.
+ */
+public enum CryptoStage {
+    KEY_LOOKUP("key-lookup"),
+    KEY_UNWRAP("key-unwrap"),
+    UDK_DERIVATION("udk-derivation"),
+    SESSION_KEY_DERIVATION("session-key-derivation"),
+    MAC("mac"),
+    PIN_BLOCK_DECRYPT("pin-block-decrypt"),
+    NATURAL_PIN("natural-pin");
+
+    private final String tag;
+
+    CryptoStage(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
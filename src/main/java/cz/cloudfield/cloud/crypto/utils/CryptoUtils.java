@@ -9,12 +9,17 @@ import javax.crypto.SecretKey;
 import java.security.GeneralSecurityException;
 import java.security.Security;
 import java.util.Arrays;
+import java.util.Map;
 
 public class CryptoUtils {
     private static final Logger logger = LoggerFactory.getLogger(CryptoUtils.class);
 
     public static final String SECURITY_PROVIDER = BouncyCastleProvider.PROVIDER_NAME;
 
+    private static final CipherPool CIPHER_POOL = new CipherPool(10_000, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static volatile Map<String, String> providers = Map.of();
+
     static {
         if (Security.getProvider(SECURITY_PROVIDER) == null) {
             logger.info("Registring security provider {}.", SECURITY_PROVIDER);
@@ -22,18 +27,84 @@ public class CryptoUtils {
         }
     }
 
+    /**
+     * One-off ECB encryption, the cipher is not pooled. Repeated operations with long-lived keys should use
+     * {@link #borrowCipher(int, SecretKey)}.
+     */
     public static byte[] encrypt(SecretKey key, byte[] data) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(key.getAlgorithm() + "/ECB/NoPadding", SECURITY_PROVIDER);
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-
-        return cipher.doFinal(data);
+        return initCipher(Cipher.ENCRYPT_MODE, key).doFinal(data);
     }
 
+    /**
+     * One-off ECB decryption, the cipher is not pooled.
+     */
     public static byte[] decrypt(SecretKey key, byte[] data) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(key.getAlgorithm() + "/ECB/NoPadding", SECURITY_PROVIDER);
-        cipher.init(Cipher.DECRYPT_MODE, key);
+        return initCipher(Cipher.DECRYPT_MODE, key).doFinal(data);
+    }
+
+    /**
+     * Borrows pooled block cipher in ECB mode without padding, already initialized with given key.
+     * Intended for long-lived keys (IMK, PVK, ZPK); the cipher should be returned by
+     * {@link #releaseCipher(int, SecretKey, Cipher)} once the operation completed successfully.
+     *
+     * @param mode - {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key  - AES or DESede key, pooled ciphers are bound to identity of the key object
+     * @return initialized {@link Cipher}
+     * @throws GeneralSecurityException when the cipher is not available or the key is invalid
+     * @throws IllegalStateException    when the key has been destroyed
+     */
+    public static Cipher borrowCipher(int mode, SecretKey key) throws GeneralSecurityException {
+        return CIPHER_POOL.borrow(mode, key);
+    }
+
+    public static void releaseCipher(int mode, SecretKey key, Cipher cipher) {
+        CIPHER_POOL.release(mode, key, cipher);
+    }
+
+    /**
+     * Drops pooled ciphers of given key, e.g. before the key is destroyed.
+     *
+     * @param key - key whose ciphers (and expanded key schedules) should be released
+     */
+    public static void evictCiphers(SecretKey key) {
+        CIPHER_POOL.evict(key);
+    }
+
+    /**
+     * Creates block cipher in ECB mode without padding for repeated single block operations with given key.
+     *
+     * @param mode - {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key  - AES or DESede key
+     * @return initialized {@link Cipher}
+     * @throws GeneralSecurityException when the cipher is not available or the key is invalid
+     */
+    public static Cipher initCipher(int mode, SecretKey key) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(key.getAlgorithm() + "/ECB/NoPadding", getProvider(key.getAlgorithm()));
+        cipher.init(mode, key);
+
+        return cipher;
+    }
+
+    /**
+     * Selects JCA providers of symmetric ciphers. Algorithms without explicit provider use {@link #SECURITY_PROVIDER}.
+     * Pooled ciphers created by previous providers are dropped.
+     *
+     * @param providersByAlgorithm - provider name by key algorithm, e.g. {@code AES -> SunJCE}
+     */
+    public static void useProviders(Map<String, String> providersByAlgorithm) {
+        for (Map.Entry<String, String> entry : providersByAlgorithm.entrySet()) {
+            if (Security.getProvider(entry.getValue()) == null) {
+                throw new IllegalArgumentException("Security provider " + entry.getValue() + " for " + entry.getKey() + " is not registered.");
+            }
+        }
+
+        logger.info("Using security providers {}, {} for other algorithms.", providersByAlgorithm, SECURITY_PROVIDER);
+        providers = Map.copyOf(providersByAlgorithm);
+        CIPHER_POOL.evictAll();
+    }
 
-        return cipher.doFinal(data);
+    public static String getProvider(String algorithm) {
+        return providers.getOrDefault(algorithm, SECURITY_PROVIDER);
     }
 
     public static byte[] xor(byte[] a, byte[] b) {
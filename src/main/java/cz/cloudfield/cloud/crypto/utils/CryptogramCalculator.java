@@ -1,20 +1,20 @@
 package cz.cloudfield.cloud.crypto.utils;
 
-import org.bouncycastle.util.Arrays;
-
+import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.HexFormat;
 
-import static cz.cloudfield.cloud.crypto.utils.CryptoUtils.xor;
-
 /**
  * @author david.svamberk
  */
 public class CryptogramCalculator {
 
+    private static final int BLOCK_SIZE = EmvMacEngine.BLOCK_SIZE;
+
     /**
      * <p>
      * Calculates ARQC - Authorisation Request Cryptogram.
@@ -43,69 +43,66 @@ public class CryptogramCalculator {
      * @throws GeneralSecurityException when calculation fails
      */
     public static byte[] calculateARQC(SecretKey imk, String pan, String panSeqNumber, String cryptogramData, String atc) throws GeneralSecurityException {
-        int blockSize = 16;
-
-        SecretKey udk = deriveUDK(pan, panSeqNumber, imk);
-
-        SecretKey sessionKey = deriveSessionKey(HexFormat.of().parseHex(atc), udk);
-
-        // TRX := (TRX || '80' || '00' || '00' || . . . || '00')
-        String trxDataPadded = CryptoUtils.addIsoPadding(cryptogramData, blockSize);
+        return calculateARQC(imk, pan, panSeqNumber, ByteBuffer.wrap(HexFormat.of().parseHex(cryptogramData)), HexFormat.of().parseHex(atc));
+    }
 
-        // TRX is then divided into 16-byte blocks X1, X2, . . . , XB.
-        String[] dataBlocks = trxDataPadded.split("(?<=\\G.{" + blockSize * 2 + "})");
+    /**
+     * <p>
+     * Calculates ARQC - Authorisation Request Cryptogram from raw transaction data.
+     * The data are read directly from the buffer (between its position and limit) without copying.
+     * </p>
+     *
+     * @param imk            - Issuer Master Key (IMK-AC)
+     * @param pan            - PAN of card
+     * @param panSeqNumber   - PAN sequence number from card
+     * @param cryptogramData - Transaction Data without padding, position of the buffer is not changed
+     * @param atc            - Application Transaction Counter (2 bytes)
+     * @return ARQC (calculated MAC)
+     * @throws GeneralSecurityException when calculation fails
+     * @see #calculateARQC(SecretKey, String, String, String, String)
+     */
+    public static byte[] calculateARQC(SecretKey imk, String pan, String panSeqNumber, ByteBuffer cryptogramData, byte[] atc) throws GeneralSecurityException {
+        CryptogramEvent event = new CryptogramEvent();
+        event.begin();
 
-        // If no padding was added
-        if (trxDataPadded.equals(cryptogramData)) {
-            // Let Z be 16-bytes set to zero.
-            byte[] z = new byte[blockSize];
+        SecretKey udk = deriveUDK(pan, panSeqNumber, imk);
 
-            // Let C be equal to Z except with its least significant bits set to ‘10000111’
-            // (C is a CMAC-defined constant for a 16-byte block cipher).
-            byte[] c = Arrays.copyOf(z, blockSize);
-            c[c.length - 1] = (byte) 0x87;
+        SecretKey sessionKey = deriveSessionKey(atc, udk);
 
-            //L := ALG(KS)[Z]
-            byte[] l = CryptoUtils.encrypt(sessionKey, z);
+        byte[] arqc = calculateMAC(sessionKey, cryptogramData);
 
-            // K1 = L << 1.
-            BigInteger lBi = new BigInteger(l);
-            BigInteger key1Bi = lBi.shiftLeft(1);
-            byte[] key1 = key1Bi.toByteArray();
-            // If msb(L) = 1 then K1 := K1 ^ C
-            if (lBi.testBit(0)) {
-                key1 = xor(key1, c);
-            }
+        commit(event, CryptogramEvent.ARQC, cryptogramData);
+        return arqc;
+    }
 
-            // K2 = K1 << 1.
-            BigInteger key2Bi = new BigInteger(key1).shiftLeft(1);
-            byte[] key2 = key2Bi.toByteArray();
-            // If msb(K1) = 1 then K2 := K2 ^ C
-            if (key1Bi.testBit(0)) {
-                key2 = xor(key2, c);
-            }
+    /**
+     * <p>
+     * Calculates MAC of transaction data with given session key and truncates it to 8 bytes.
+     * </p>
+     *
+     * @param sessionKey     - session key derived by {@link #deriveSessionKey(byte[], SecretKey)}
+     * @param cryptogramData - Transaction Data without padding, position of the buffer is not changed
+     * @return ARQC (calculated MAC)
+     * @throws GeneralSecurityException when calculation fails
+     * @see EmvMacEngine
+     */
+    public static byte[] calculateMAC(SecretKey sessionKey, ByteBuffer cryptogramData) throws GeneralSecurityException {
+        CryptogramEvent event = new CryptogramEvent();
+        event.begin();
 
-            // Mask the final block with sub-key K1
-            // XB := XB ^ K1
-            // and with sub-key K2
-            // XB := XB ^ K2
-            byte[] last = HexFormat.of().parseHex(dataBlocks[dataBlocks.length - 1]);
-            last = xor(last, key1);
-            last = xor(last, key2);
-            dataBlocks[dataBlocks.length - 1] = HexFormat.of().withUpperCase().formatHex(last);
-        }
+        byte[] mac = new byte[BLOCK_SIZE];
+        EmvMacEngine.mac(CryptoUtils.initCipher(Cipher.ENCRYPT_MODE, sessionKey), cryptogramData, mac);
 
-        // Initial value of MAC - H0 := ('00' || '00' || ... || '00' || '00')
-        byte[] arqc = new byte[blockSize];
+        commit(event, CryptogramEvent.MAC, cryptogramData);
+        return Arrays.copyOf(mac, 8);
+    }
 
-        // Hi := ALG(KSL)[Xi XOR Hi-1], for i = 1, 2, . . . , B
-        for (String dataBlock : dataBlocks) {
-            byte[] data = HexFormat.of().parseHex(dataBlock);
-            byte[] xor = xor(data, arqc);
-            arqc = CryptoUtils.encrypt(sessionKey, xor);
+    private static void commit(CryptogramEvent event, String operation, ByteBuffer cryptogramData) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.dataSize = cryptogramData.remaining();
+            event.commit();
         }
-
-        return Arrays.copyOfRange(arqc, 0, 8);
     }
 
     /**
@@ -135,32 +132,66 @@ public class CryptogramCalculator {
      * @throws GeneralSecurityException when derivation fails
      */
     public static SecretKey deriveUDK(String pan, String panSeqNumber, SecretKey key) throws GeneralSecurityException {
-        String panAndSeqNo = pan + panSeqNumber;
+        byte[] udk = new byte[BLOCK_SIZE * 2];
+        deriveUDK(key, udkDerivationData(pan, panSeqNumber), udk);
 
-        // Concatenate from left to right the decimal digits of the Application PAN with
-        // the PAN Sequence Number.
-        byte[] data = HexFormat.of().parseHex(panAndSeqNo.length() % 2 == 0 ? panAndSeqNo : "0" + panAndSeqNo);
+        SecretKey udkKey = new SecretKeySpec(udk, "AES");
+        Arrays.fill(udk, (byte) 0);
+        return udkKey;
+    }
 
-        // Pad it to the left with hexadecimal zeros in order to obtain a 16-byte number
-        // Y in numeric format.
-        byte[] yValue = CryptoUtils.leftPaddToMultipleOf(16, data, (byte) 0x00);
+    /**
+     * <p>
+     * Prepares input of UDK derivation, see {@link #deriveUDK(String, String, SecretKey)}.
+     * </p>
+     *
+     * <p>
+     * Concatenate from left to right the decimal digits of the Application PAN with
+     * the PAN Sequence Number. Pad it to the left with hexadecimal zeros in order to obtain
+     * a 16-byte number Y in numeric format.
+     * </p>
+     *
+     * @param pan          - PAN of card
+     * @param panSeqNumber - PAN sequence number from card
+     * @return 16-byte value Y
+     */
+    public static byte[] udkDerivationData(String pan, String panSeqNumber) {
+        byte[] yValue = new byte[BLOCK_SIZE];
+        int nibble = BLOCK_SIZE * 2 - 1;
+        nibble = packDigits(panSeqNumber, yValue, nibble);
+        packDigits(pan, yValue, nibble);
+
+        return yValue;
+    }
+
+    /**
+     * <p>
+     * Derives UDK from value Y prepared by {@link #udkDerivationData(String, String)}.
+     * </p>
+     *
+     * @param key    - {@link SecretKey} data encryption key/Issuer master key
+     * @param yValue - 16-byte value Y, not modified
+     * @param udk    - output buffer, receives 32 bytes of UDK
+     * @throws GeneralSecurityException when derivation fails
+     */
+    public static void deriveUDK(SecretKey key, byte[] yValue, byte[] udk) throws GeneralSecurityException {
+        Cipher cipher = CryptoUtils.borrowCipher(Cipher.ENCRYPT_MODE, key);
 
         // Derive first part of UDK -> firstUDK := AES(IMK)[Y]
-        byte[] firstUDK = CryptoUtils.encrypt(key, yValue);
+        cipher.doFinal(yValue, 0, BLOCK_SIZE, udk, 0);
 
         // Y* = Y ^ ('FF' || 'FF' || ... || 'FF' || 'FF').
-        byte[] fs = new byte[16];
-        Arrays.fill(fs, (byte) 0xFF);
-
-        byte[] xor = xor(yValue, fs);
+        byte[] yStar = new byte[BLOCK_SIZE];
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            yStar[i] = (byte) ~yValue[i];
+        }
 
         // Derive second part of UDK -> secondUDK := AES(IMK)[Y*]
-        byte[] secondUDK = CryptoUtils.encrypt(key, xor);
-
         // Final Unique Derived Key -> UDK := {AES(IMK)[Y] || AES(IMK)[Y*]}
-        byte[] udk = Arrays.concatenate(firstUDK, secondUDK);
+        cipher.doFinal(yStar, 0, BLOCK_SIZE, udk, BLOCK_SIZE);
+        CryptoUtils.releaseCipher(Cipher.ENCRYPT_MODE, key, cipher);
 
-        return new SecretKeySpec(udk, "AES");
+        Arrays.fill(yStar, (byte) 0);
     }
 
     /**
@@ -179,20 +210,50 @@ public class CryptogramCalculator {
      * @throws GeneralSecurityException when derivation fails
      */
     public static SecretKey deriveSessionKey(byte[] atc, SecretKey udk) throws GeneralSecurityException {
+        if (atc.length != 2) {
+            throw new IllegalArgumentException("Invalid ATC length: " + atc.length);
+        }
+
         //For the session key used to generate and verify the Application Cryptogram and the ARPC,
         // the diversification value is the ATC followed by n-2 bytes of '00':
         //    R := ATC || '00' || '00' || … || '00' || '00' || '00'.
-        byte[] padding = new byte[13]; // 16 - ATC(2Byte) - 0F/F0(1Byte) = 13
+        byte[] r = new byte[BLOCK_SIZE];
+        r[0] = atc[0];
+        r[1] = atc[1];
+
+        Cipher cipher = CryptoUtils.initCipher(Cipher.ENCRYPT_MODE, udk);
+        byte[] sk = new byte[BLOCK_SIZE * 2];
 
         //F1 = R0 || R1 || 'F0' || … || Rn-1.
-        byte[] first = Arrays.concatenate(atc, new byte[]{(byte) 0xF0}, padding);
+        r[2] = (byte) 0xF0;
+        cipher.doFinal(r, 0, BLOCK_SIZE, sk, 0);
 
         // F2 = R0 || R1 || '0F' || … || Rn-1.
-        byte[] second = Arrays.concatenate(atc, new byte[]{(byte) 0x0F}, padding);
+        r[2] = (byte) 0x0F;
+        cipher.doFinal(r, 0, BLOCK_SIZE, sk, BLOCK_SIZE);
 
         // {ALG (MK) [F1] || ALG (MK) [F2] }.
-        byte[] sk = Arrays.concatenate(CryptoUtils.encrypt(udk, first), CryptoUtils.encrypt(udk, second));
+        SecretKey sessionKey = new SecretKeySpec(sk, "AES");
+        Arrays.fill(sk, (byte) 0);
+        return sessionKey;
+    }
 
-        return new SecretKeySpec(sk, "AES");
+    /**
+     * Writes hexadecimal digits right-aligned into nibbles of target, ending at given nibble index.
+     *
+     * @return index of the nibble preceding the written digits
+     */
+    private static int packDigits(String digits, byte[] target, int nibble) {
+        for (int i = digits.length() - 1; i >= 0; i--, nibble--) {
+            if (nibble < 0) {
+                throw new IllegalArgumentException("PAN and PAN sequence number exceed " + BLOCK_SIZE + " bytes.");
+            }
+            int digit = Character.digit(digits.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid digit in PAN or PAN sequence number: " + digits.charAt(i));
+            }
+            target[nibble >> 1] |= (byte) ((nibble & 1) == 0 ? digit << 4 : digit);
+        }
+        return nibble;
     }
 }
@@ -0,0 +1,30 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Cryptogram calculation of {@link CryptogramCalculator}, ARQC calculation includes its MAC calculation.
+ */
+@Name("cz.cloudfield.crypto.Cryptogram")
+@Label("Cryptogram Calculation")
+@Category({"Payment Crypto", "Operations"})
+@Description("ARQC (UDK and session key derivation and MAC) or MAC calculation")
+@StackTrace(false)
+class CryptogramEvent extends Event {
+
+    static final String ARQC = "arqc";
+    static final String MAC = "mac";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Data Size")
+    @DataAmount
+    int dataSize;
+}
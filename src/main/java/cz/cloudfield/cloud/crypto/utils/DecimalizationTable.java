@@ -0,0 +1,56 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Precompiled decimalization table - maps every nibble of encrypted PIN validation data to a decimal digit.
+ * Instances are interned by content, issuers use only a handful of tables.
+ */
+public final class DecimalizationTable {
+
+    private static final Cache<String, DecimalizationTable> TABLES = Caffeine.newBuilder()
+        .maximumSize(256)
+        .build();
+
+    private final byte[] digits;
+
+    private DecimalizationTable(byte[] digits) {
+        this.digits = digits;
+    }
+
+    /**
+     * @param table - 16 decimal digits, digit at index {@code i} replaces nibble {@code i}
+     */
+    public static DecimalizationTable of(String table) {
+        return TABLES.get(table, DecimalizationTable::compile);
+    }
+
+    private static DecimalizationTable compile(String table) {
+        if (table.length() != 16) {
+            throw new IllegalArgumentException("Invalid decimalization table length: " + table.length());
+        }
+
+        byte[] digits = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            int digit = Character.digit(table.charAt(i), 10);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid decimalization table.");
+            }
+            digits[i] = (byte) digit;
+        }
+        return new DecimalizationTable(digits);
+    }
+
+    /**
+     * Decimalizes the first {@code length} nibbles of the block.
+     *
+     * @param result - receives {@code length} decimal digits
+     */
+    public void decimalize(byte[] block, int length, byte[] result) {
+        for (int i = 0; i < length; i++) {
+            int b = block[i >> 1];
+            result[i] = digits[(i & 1) == 0 ? (b >> 4) & 0x0F : b & 0x0F];
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Byte oriented MAC calculation for 16-byte block ciphers.
+ * </p>
+ *
+ * <p>
+ * EMV v4.3 Book 2 Security and Key Management
+ * A1.2.2 MAC Algorithms using an 16-byte block cipher
+ * </p>
+ *
+ * <p>
+ * Blocks are chained in place in a single 16-byte buffer, the message is never copied nor padded in a new array.
+ * </p>
+ */
+public final class EmvMacEngine {
+
+    public static final int BLOCK_SIZE = 16;
+
+    // C is a CMAC-defined constant for a 16-byte block cipher - least significant bits set to '10000111'
+    private static final int C = 0x87;
+
+    private EmvMacEngine() {
+    }
+
+    /**
+     * Calculates MAC of bytes between position and limit of given buffer. Position of the buffer is not changed.
+     *
+     * @param cipher - block cipher initialized for encryption with session key, ECB mode without padding
+     * @param data   - transaction data without padding, heap or direct buffer
+     * @param mac    - output buffer, at least 16 bytes; receives the full last chaining value Hb
+     * @throws GeneralSecurityException when encryption fails
+     */
+    public static void mac(Cipher cipher, ByteBuffer data, byte[] mac) throws GeneralSecurityException {
+        int length = data.remaining();
+        if (length == 0) {
+            throw new IllegalArgumentException("Data to MAC cannot be empty.");
+        }
+
+        int offset = data.position();
+        int remainder = length % BLOCK_SIZE;
+        int lastBlockOffset = offset + (remainder == 0 ? length - BLOCK_SIZE : length - remainder);
+
+        // Initial value of MAC - H0 := ('00' || '00' || ... || '00' || '00')
+        Arrays.fill(mac, 0, BLOCK_SIZE, (byte) 0);
+
+        // Hi := ALG(KSL)[Xi XOR Hi-1], for i = 1, 2, . . . , B-1
+        for (int blockOffset = offset; blockOffset < lastBlockOffset; blockOffset += BLOCK_SIZE) {
+            xor(mac, data, blockOffset, BLOCK_SIZE);
+            cipher.doFinal(mac, 0, BLOCK_SIZE, mac, 0);
+        }
+
+        if (remainder == 0) {
+            // No padding was added - mask the final block with sub-key K1, XB := XB ^ K1
+            xor(mac, data, lastBlockOffset, BLOCK_SIZE);
+            maskWithK1(cipher, mac);
+        } else {
+            // XB := (XB || '80' || '00' || '00' || . . . || '00'), zero bytes do not change the chaining value
+            xor(mac, data, lastBlockOffset, remainder);
+            mac[remainder] ^= (byte) 0x80;
+        }
+
+        cipher.doFinal(mac, 0, BLOCK_SIZE, mac, 0);
+    }
+
+    /**
+     * XORs block with CMAC sub-key K1 without branching on secret values.
+     */
+    private static void maskWithK1(Cipher cipher, byte[] block) throws GeneralSecurityException {
+        // L := ALG(KS)[Z], Z is 16-bytes set to zero
+        byte[] l = new byte[BLOCK_SIZE];
+        cipher.doFinal(l, 0, BLOCK_SIZE, l, 0);
+
+        // K1 := L << 1, if msb(L) = 1 then K1 := K1 ^ C
+        int msbMask = -((l[0] >> 7) & 1);
+        for (int i = 0; i < BLOCK_SIZE - 1; i++) {
+            block[i] ^= (byte) ((l[i] << 1) | ((l[i + 1] & 0xFF) >>> 7));
+        }
+        block[BLOCK_SIZE - 1] ^= (byte) ((l[BLOCK_SIZE - 1] << 1) ^ (C & msbMask));
+
+        Arrays.fill(l, (byte) 0);
+    }
+
+    private static void xor(byte[] target, ByteBuffer source, int sourceOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] ^= source.get(sourceOffset + i);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * PIN operation of {@link PinOffsetHelper}, neither PINs nor offsets are recorded.
+ */
+@Name("cz.cloudfield.crypto.Pin")
+@Label("PIN Operation")
+@Category({"Payment Crypto", "Operations"})
+@Description("PIN verification, offset calculation or PIN change")
+@StackTrace(false)
+class PinEvent extends Event {
+
+    static final String VERIFY_PIN = "verify-pin";
+    static final String CALCULATE_OFFSET = "calculate-offset";
+    static final String CHANGE_PIN = "change-pin";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("PIN Length")
+    int pinLength;
+
+    @Label("Success")
+    @Description("Operation completed without an error, regardless of the verification result")
+    boolean success;
+}
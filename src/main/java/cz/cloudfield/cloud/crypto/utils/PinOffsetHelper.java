@@ -1,124 +1,367 @@
 package cz.cloudfield.cloud.crypto.utils;
 
+import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.HexFormat;
 
+/**
+ * IBM 3624 PIN offset calculation and verification.
+ *
+ * <p>
+ * PINs, natural PINs and offsets are kept as arrays of digits (one nibble per byte) and the PIN block
+ * is decoded in place, so the verification path does not allocate intermediate {@link String}s.
+ * The {@link String} based methods are thin adapters over the digit array methods.
+ * </p>
+ *
+ * <p>
+ * Durations of PIN block decryption and natural PIN calculation are reported to the {@link StageListener}.
+ * </p>
+ */
 public class PinOffsetHelper {
 
+    public static final int MIN_PIN_LENGTH = 4;
+    public static final int MAX_PIN_LENGTH = 12;
+    public static final int OFFSET_LENGTH = 12;
+
+    private static final int BLOCK_LENGTH = 8;
+    private static final int PAD_DIGIT = 0xF;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     private final SecretKey pvk;
     private final SecretKey zpk;
+    private final StageListener stageListener;
 
     public PinOffsetHelper(SecretKey pvk, SecretKey zpk) {
+        this(pvk, zpk, StageListener.NONE);
+    }
+
+    public PinOffsetHelper(SecretKey pvk, SecretKey zpk, StageListener stageListener) {
         this.pvk = pvk;
         this.zpk = zpk;
+        this.stageListener = stageListener;
     }
 
-    public String extractPinFromPinBlock(String pinBlock, String pan) throws GeneralSecurityException {
-        byte[] pinBlockBytes = HexFormat.of().parseHex(pinBlock);
-        if (pinBlockBytes.length != 8) {
-            throw new IllegalArgumentException("Invalid PIN block length: " + pinBlockBytes.length);
+    /**
+     * Verifies PIN from ISO format 0 PIN block against the offset.
+     *
+     * @param pinBlock - PIN block encrypted by ZPK
+     * @param offset   - PIN offset, only first {@code pinLength} digits are used
+     * @return {@code true} when the entered PIN matches the PIN expected by the offset
+     */
+    public boolean verifyPin(byte[] pinBlock, String pan, String decimalizationTable, String pinValidationData, int pinLength, String offset) throws GeneralSecurityException {
+        byte[] enteredPin = new byte[MAX_PIN_LENGTH];
+        byte[] naturalPin = new byte[MAX_PIN_LENGTH];
+        byte[] offsetDigits = new byte[MAX_PIN_LENGTH];
+        PinEvent event = new PinEvent();
+        event.begin();
+        boolean success = false;
+        try {
+            int enteredPinLength = extractPin(pinBlock, pan, enteredPin);
+            calculateNaturalPin(pan, decimalizationTable, pinValidationData, pinLength, naturalPin);
+            parseDecimalDigits(offset, pinLength, offsetDigits);
+
+            // the natural PIN array is reused for the expected PIN
+            calculateExpectedPin(naturalPin, offsetDigits, pinLength, naturalPin);
+
+            boolean verified = enteredPinLength == pinLength & equalDigits(enteredPin, naturalPin, pinLength);
+            success = true;
+            return verified;
+        } finally {
+            Arrays.fill(enteredPin, (byte) 0);
+            Arrays.fill(naturalPin, (byte) 0);
+            commit(event, PinEvent.VERIFY_PIN, pinLength, success);
         }
+    }
 
-        byte[] pinBlockDecrypted = CryptoUtils.decrypt(zpk, pinBlockBytes);
+    /**
+     * Calculates offset of PIN from ISO format 0 PIN block.
+     *
+     * @param pinBlock - PIN block encrypted by ZPK
+     * @return offset padded by 'F' to {@value #OFFSET_LENGTH} hex digits
+     */
+    public String calculateOffset(byte[] pinBlock, String pan, String decimalizationTable, String pinValidationData, int pinLength) throws GeneralSecurityException {
+        byte[] enteredPin = new byte[MAX_PIN_LENGTH];
+        byte[] naturalPin = new byte[MAX_PIN_LENGTH];
+        byte[] offset = new byte[OFFSET_LENGTH];
+        PinEvent event = new PinEvent();
+        event.begin();
+        boolean success = false;
+        try {
+            int enteredPinLength = extractPin(pinBlock, pan, enteredPin);
+            if (enteredPinLength < pinLength) {
+                throw new IllegalArgumentException("PIN is shorter than " + pinLength + " digits.");
+            }
+            calculateNaturalPin(pan, decimalizationTable, pinValidationData, pinLength, naturalPin);
+            calculateOffset(naturalPin, enteredPin, pinLength, offset);
+
+            String result = toHexString(offset, OFFSET_LENGTH);
+            success = true;
+            return result;
+        } finally {
+            Arrays.fill(enteredPin, (byte) 0);
+            Arrays.fill(naturalPin, (byte) 0);
+            commit(event, PinEvent.CALCULATE_OFFSET, pinLength, success);
+        }
+    }
 
-        byte[] panField = preparePanField(pan);
+    /**
+     * Verifies the old PIN against its offset and calculates offset of the new PIN, the natural PIN is calculated once.
+     *
+     * @param oldPinBlock - PIN block of the current PIN encrypted by ZPK
+     * @param newPinBlock - PIN block of the new PIN encrypted by ZPK, the new PIN must have {@code pinLength} digits
+     * @param offset      - offset of the current PIN
+     * @return offset of the new PIN padded by 'F' to {@value #OFFSET_LENGTH} hex digits,
+     * {@code null} when the old PIN does not match
+     */
+    public String changePin(byte[] oldPinBlock, byte[] newPinBlock, String pan, String decimalizationTable, String pinValidationData, int pinLength, String offset) throws GeneralSecurityException {
+        byte[] oldPin = new byte[MAX_PIN_LENGTH];
+        byte[] newPin = new byte[MAX_PIN_LENGTH];
+        byte[] naturalPin = new byte[MAX_PIN_LENGTH];
+        byte[] expectedPin = new byte[MAX_PIN_LENGTH];
+        byte[] offsetDigits = new byte[OFFSET_LENGTH];
+        PinEvent event = new PinEvent();
+        event.begin();
+        boolean success = false;
+        try {
+            int oldPinLength = extractPin(oldPinBlock, pan, oldPin);
+            int newPinLength = extractPin(newPinBlock, pan, newPin);
+            // digits beyond pinLength would be dropped from the offset and the new PIN could never be verified
+            if (newPinLength != pinLength) {
+                throw new IllegalArgumentException("New PIN must have " + pinLength + " digits.");
+            }
+            calculateNaturalPin(pan, decimalizationTable, pinValidationData, pinLength, naturalPin);
+            parseDecimalDigits(offset, pinLength, offsetDigits);
 
-        // XOR the decrypted PIN Block with the PAN Block to get the PIN Field
-        byte[] pinField = new byte[8];
-        for (int i = 0; i < 8; i++) {
-            pinField[i] = (byte) (pinBlockDecrypted[i] ^ panField[i]);
+            calculateExpectedPin(naturalPin, offsetDigits, pinLength, expectedPin);
+            String result = null;
+            if (oldPinLength == pinLength & equalDigits(oldPin, expectedPin, pinLength)) {
+                calculateOffset(naturalPin, newPin, pinLength, offsetDigits);
+                result = toHexString(offsetDigits, OFFSET_LENGTH);
+            }
+            success = true;
+            return result;
+        } finally {
+            Arrays.fill(oldPin, (byte) 0);
+            Arrays.fill(newPin, (byte) 0);
+            Arrays.fill(naturalPin, (byte) 0);
+            Arrays.fill(expectedPin, (byte) 0);
+            commit(event, PinEvent.CHANGE_PIN, pinLength, success);
         }
+    }
 
-        // Convert PIN field to hexadecimal string
-        String pinFieldHex = HexFormat.of().withUpperCase().formatHex(pinField);
+    private static void commit(PinEvent event, String operation, int pinLength, boolean success) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.pinLength = pinLength;
+            event.success = success;
+            event.commit();
+        }
+    }
 
-        // Extract the PIN length from the second nibble
-        int pinLength = Character.digit(pinFieldHex.charAt(1), 16);
+    public String extractPinFromPinBlock(String pinBlock, String pan) throws GeneralSecurityException {
+        byte[] pin = new byte[MAX_PIN_LENGTH];
+        int pinLength = extractPin(HexFormat.of().parseHex(pinBlock), pan, pin);
+        return toHexString(pin, pinLength);
+    }
 
-        // Validate PIN length
-        if (pinLength < 4 || pinLength > 12) {
-            throw new IllegalArgumentException("Invalid PIN length extracted from PIN Block.");
+    /**
+     * Decrypts ISO format 0 PIN block and extracts the PIN digits.
+     *
+     * @param pinBlock - PIN block encrypted by ZPK, 8 bytes
+     * @param pin      - receives PIN digits, at least {@value #MAX_PIN_LENGTH} long
+     * @return number of PIN digits written to {@code pin}
+     */
+    public int extractPin(byte[] pinBlock, String pan, byte[] pin) throws GeneralSecurityException {
+        if (pinBlock.length != BLOCK_LENGTH) {
+            throw new IllegalArgumentException("Invalid PIN block length: " + pinBlock.length);
         }
 
-        // Extract the PIN digits
-        StringBuilder pinBuilder = new StringBuilder();
-        for (int i = 2; i < 2 + pinLength; i++) {
-            char c = pinFieldHex.charAt(i);
-            if (c == 'F') {
-                break; // Stop if padding character 'F' is encountered
+        long start = System.nanoTime();
+        byte[] pinField = new byte[BLOCK_LENGTH];
+        try {
+            Cipher cipher = CryptoUtils.borrowCipher(Cipher.DECRYPT_MODE, zpk);
+            cipher.doFinal(pinBlock, 0, BLOCK_LENGTH, pinField, 0);
+            CryptoUtils.releaseCipher(Cipher.DECRYPT_MODE, zpk, cipher);
+
+            // XOR the decrypted PIN Block with the PAN Block to get the PIN Field
+            xorPanField(pan, pinField);
+
+            // Extract the PIN length from the second nibble
+            int pinLength = nibble(pinField, 1);
+
+            // Validate PIN length
+            if (pinLength < MIN_PIN_LENGTH || pinLength > MAX_PIN_LENGTH) {
+                throw new IllegalArgumentException("Invalid PIN length extracted from PIN Block.");
             }
-            pinBuilder.append(c);
-        }
 
-        return pinBuilder.toString();
+            // Extract the PIN digits
+            int extracted = 0;
+            for (int i = 2; i < 2 + pinLength; i++) {
+                int digit = nibble(pinField, i);
+                if (digit == PAD_DIGIT) {
+                    break; // Stop if padding nibble 'F' is encountered
+                }
+                pin[extracted++] = (byte) digit;
+            }
+            stageListener.onStage(CryptoStage.PIN_BLOCK_DECRYPT, System.nanoTime() - start);
+            return extracted;
+        } finally {
+            Arrays.fill(pinField, (byte) 0);
+        }
     }
 
-    private byte[] preparePanField(String pan) {
-        // Exclude the last digit (check digit)
-        String pan12 = pan.substring(pan.length() - 13, pan.length() - 1); // Rightmost 12 digits excluding check digit
-
-        // Build the PAN field (16 hex digits)
-        String panBlockString = "0000" + pan12;
+    /**
+     * XORs PAN field - "0000" followed by the rightmost 12 digits of PAN excluding the check digit - into the block.
+     */
+    private static void xorPanField(String pan, byte[] block) {
+        int start = pan.length() - 13;
+        if (start < 0) {
+            throw new IllegalArgumentException("Invalid PAN length: " + pan.length());
+        }
 
-        // Convert PAN Block to byte array
-        return HexFormat.of().parseHex(panBlockString);
+        for (int i = 0; i < 12; i++) {
+            int digit = Character.digit(pan.charAt(start + i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid PAN.");
+            }
+            xorNibble(block, 4 + i, digit);
+        }
     }
 
     public String calculateNaturalPin(String pan, String decimalizationTable, String pinValidationData, int pinLength) throws GeneralSecurityException {
-        byte[] pvd = HexFormat.of().parseHex(pinValidationData.replace("N", pan.substring(pan.length() - 5)));
-        if (pvd.length != 8) {
-            throw new IllegalArgumentException("Invalid PVD length: " + pvd.length);
-        }
+        byte[] naturalPin = new byte[MAX_PIN_LENGTH];
+        calculateNaturalPin(pan, decimalizationTable, pinValidationData, pinLength, naturalPin);
+        return toHexString(naturalPin, pinLength);
+    }
 
-        byte[] pvdEncrypted = CryptoUtils.encrypt(pvk, pvd);
+    /**
+     * Encrypts PIN validation data by PVK and decimalizes the first {@code pinLength} nibbles.
+     *
+     * @param pinValidationData - 16 hex digits, every 'N' is replaced by the last 5 digits of PAN
+     * @param naturalPin        - receives {@code pinLength} decimal digits
+     */
+    public void calculateNaturalPin(String pan, String decimalizationTable, String pinValidationData, int pinLength, byte[] naturalPin) throws GeneralSecurityException {
+        calculateNaturalPin(pan, DecimalizationTable.of(decimalizationTable), PinValidationDataTemplate.of(pinValidationData), pinLength, naturalPin);
+    }
 
-        // Convert encrypted data to hexadecimal string
-        String pvdEncryptedHex = HexFormat.of().withUpperCase().formatHex(pvdEncrypted);
+    public void calculateNaturalPin(String pan, DecimalizationTable decimalizationTable, PinValidationDataTemplate pinValidationData, int pinLength, byte[] naturalPin) throws GeneralSecurityException {
+        validatePinLength(pinLength);
 
-        // Decimalize using the decimalization table
-        StringBuilder decimalized = new StringBuilder();
-        for (int i = 0; i < pvdEncryptedHex.length(); i++) {
-            char hexChar = pvdEncryptedHex.charAt(i);
-            int index = Character.digit(hexChar, 16);
-            decimalized.append(decimalizationTable.charAt(index));
-        }
+        long start = System.nanoTime();
+        byte[] pvd = new byte[PinValidationDataTemplate.LENGTH];
+        pinValidationData.fill(pan, pvd);
 
-        // Extract the Natural PIN
-        return decimalized.substring(0, pinLength);
+        Cipher cipher = CryptoUtils.borrowCipher(Cipher.ENCRYPT_MODE, pvk);
+        cipher.doFinal(pvd, 0, PinValidationDataTemplate.LENGTH, pvd, 0);
+        CryptoUtils.releaseCipher(Cipher.ENCRYPT_MODE, pvk, cipher);
+
+        // Decimalize using the decimalization table
+        decimalizationTable.decimalize(pvd, pinLength, naturalPin);
+        stageListener.onStage(CryptoStage.NATURAL_PIN, System.nanoTime() - start);
     }
 
     // Function to calculate offset
     public String calculateOffset(String naturalPin, String enteredPin) {
         int pinLength = naturalPin.length();
-        StringBuilder offsetBuilder = new StringBuilder();
+        if (enteredPin.length() < pinLength) {
+            throw new IllegalArgumentException("PIN is shorter than " + pinLength + " digits.");
+        }
+
+        byte[] naturalDigits = new byte[pinLength];
+        byte[] enteredDigits = new byte[pinLength];
+        byte[] offset = new byte[Math.max(OFFSET_LENGTH, pinLength)];
+        parseDecimalDigits(naturalPin, pinLength, naturalDigits);
+        parseDecimalDigits(enteredPin, pinLength, enteredDigits);
+
+        calculateOffset(naturalDigits, enteredDigits, pinLength, offset);
+        return toHexString(offset, offset.length);
+    }
+
+    /**
+     * @param offset - receives offset digits padded by 0xF to {@value #OFFSET_LENGTH} digits
+     */
+    public void calculateOffset(byte[] naturalPin, byte[] enteredPin, int pinLength, byte[] offset) {
         for (int i = 0; i < pinLength; i++) {
-            int natDigit = Character.digit(naturalPin.charAt(i), 10);
-            int enteredDigit = Character.digit(enteredPin.charAt(i), 10);
-            int offsetDigit = ((natDigit - enteredDigit + 10) % 10);
-            offsetBuilder.append(offsetDigit);
+            int enteredDigit = enteredPin[i];
+            if (enteredDigit > 9) {
+                throw new IllegalArgumentException("PIN is not numeric.");
+            }
+            offset[i] = (byte) ((naturalPin[i] - enteredDigit + 10) % 10);
         }
 
         // Padding with 'F's to make it 12 hex digits (6 bytes)
-        while (offsetBuilder.length() < 12) {
-            offsetBuilder.append('F');
+        for (int i = pinLength; i < OFFSET_LENGTH; i++) {
+            offset[i] = PAD_DIGIT;
         }
-
-        return offsetBuilder.toString();
     }
 
     public String calculateExpectedPin(String naturalPin, String pinOffset) {
         int pinLength = naturalPin.length();
-        String offset = pinOffset.substring(0, pinLength);
 
-        StringBuilder expectedPINBuilder = new StringBuilder();
+        byte[] naturalDigits = new byte[pinLength];
+        byte[] offsetDigits = new byte[pinLength];
+        parseDecimalDigits(naturalPin, pinLength, naturalDigits);
+        parseDecimalDigits(pinOffset, pinLength, offsetDigits);
+
+        calculateExpectedPin(naturalDigits, offsetDigits, pinLength, naturalDigits);
+        return toHexString(naturalDigits, pinLength);
+    }
+
+    /**
+     * @param expectedPin - receives {@code pinLength} digits, may be the same array as {@code naturalPin}
+     */
+    public void calculateExpectedPin(byte[] naturalPin, byte[] offset, int pinLength, byte[] expectedPin) {
         for (int i = 0; i < pinLength; i++) {
-            int natDigit = Character.digit(naturalPin.charAt(i), 10);
-            int offsetDigit = Character.digit(offset.charAt(i), 10);
-            int expectedDigit = (natDigit + 10 - offsetDigit) % 10;
-            expectedPINBuilder.append(expectedDigit);
+            expectedPin[i] = (byte) ((naturalPin[i] + 10 - offset[i]) % 10);
         }
-        return expectedPINBuilder.toString();
     }
 
+    /**
+     * Compares first {@code length} digits in time independent of the position of the first difference.
+     */
+    public static boolean equalDigits(byte[] a, byte[] b, int length) {
+        int diff = 0;
+        for (int i = 0; i < length; i++) {
+            diff |= a[i] ^ b[i];
+        }
+        return diff == 0;
+    }
+
+    private static void validatePinLength(int pinLength) {
+        if (pinLength < MIN_PIN_LENGTH || pinLength > MAX_PIN_LENGTH) {
+            throw new IllegalArgumentException("Invalid PIN length: " + pinLength);
+        }
+    }
+
+    private static void parseDecimalDigits(String value, int length, byte[] digits) {
+        if (value.length() < length) {
+            throw new IllegalArgumentException("Expected at least " + length + " digits.");
+        }
+        for (int i = 0; i < length; i++) {
+            int digit = Character.digit(value.charAt(i), 10);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Expected decimal digits.");
+            }
+            digits[i] = (byte) digit;
+        }
+    }
+
+    private static int nibble(byte[] block, int index) {
+        int b = block[index >> 1];
+        return (index & 1) == 0 ? (b >> 4) & 0x0F : b & 0x0F;
+    }
+
+    private static void xorNibble(byte[] block, int index, int value) {
+        block[index >> 1] ^= (byte) ((index & 1) == 0 ? value << 4 : value);
+    }
+
+    private static String toHexString(byte[] digits, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = HEX_DIGITS[digits[i]];
+        }
+        return new String(chars);
+    }
 }
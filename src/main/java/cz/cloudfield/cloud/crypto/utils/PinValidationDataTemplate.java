@@ -0,0 +1,93 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Precompiled PIN validation data template, e.g. {@code 123456N12345}. Hex digits of the template are
+ * decoded once, every 'N' is a pre-located insertion point of the last 5 digits of PAN.
+ * Instances are interned by content, issuers use only a handful of templates.
+ */
+public final class PinValidationDataTemplate {
+
+    public static final int LENGTH = 8;
+
+    private static final int PAN_DIGITS = 5;
+
+    private static final Cache<String, PinValidationDataTemplate> TEMPLATES = Caffeine.newBuilder()
+        .maximumSize(256)
+        .build();
+
+    private final byte[] fixed;
+    private final int[] panOffsets;
+
+    private PinValidationDataTemplate(byte[] fixed, int[] panOffsets) {
+        this.fixed = fixed;
+        this.panOffsets = panOffsets;
+    }
+
+    public static PinValidationDataTemplate of(String template) {
+        return TEMPLATES.get(template, PinValidationDataTemplate::compile);
+    }
+
+    private static PinValidationDataTemplate compile(String template) {
+        int panCount = 0;
+        for (int i = 0; i < template.length(); i++) {
+            if (template.charAt(i) == 'N') {
+                panCount++;
+            }
+        }
+
+        int nibbles = template.length() + panCount * (PAN_DIGITS - 1);
+        if (nibbles != 2 * LENGTH) {
+            throw new IllegalArgumentException("Invalid PVD length: " + nibbles / 2);
+        }
+
+        byte[] fixed = new byte[LENGTH];
+        int[] panOffsets = new int[panCount];
+        int nibble = 0;
+        int pan = 0;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == 'N') {
+                panOffsets[pan++] = nibble;
+                nibble += PAN_DIGITS;
+            } else {
+                int digit = Character.digit(c, 16);
+                if (digit < 0) {
+                    throw new IllegalArgumentException("Invalid PVD.");
+                }
+                setNibble(fixed, nibble++, digit);
+            }
+        }
+        return new PinValidationDataTemplate(fixed, panOffsets);
+    }
+
+    /**
+     * Fills PIN validation data for given PAN.
+     *
+     * @param pvd - receives {@value #LENGTH} bytes
+     */
+    public void fill(String pan, byte[] pvd) {
+        int panStart = pan.length() - PAN_DIGITS;
+        if (panStart < 0) {
+            throw new IllegalArgumentException("Invalid PAN length: " + pan.length());
+        }
+
+        System.arraycopy(fixed, 0, pvd, 0, LENGTH);
+        for (int offset : panOffsets) {
+            for (int i = 0; i < PAN_DIGITS; i++) {
+                int digit = Character.digit(pan.charAt(panStart + i), 16);
+                if (digit < 0) {
+                    throw new IllegalArgumentException("Invalid PAN.");
+                }
+                setNibble(pvd, offset + i, digit);
+            }
+        }
+    }
+
+    // the nibble is expected to be zero
+    private static void setNibble(byte[] block, int index, int value) {
+        block[index >> 1] |= (byte) ((index & 1) == 0 ? value << 4 : value);
+    }
+}
@@ -0,0 +1,13 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+/**
+ * Receives durations of completed stages, called on the hot path so implementations must not block.
+ */
+@FunctionalInterface
+public interface StageListener {
+
+    StageListener NONE = (stage, nanos) -> {
+    };
+
+    void onStage(CryptoStage stage, long nanos);
+}
@@ -0,0 +1,155 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Key block in the TR-31 layout of {@code TR31KeyBlockWithMACExample}: 16 byte ASCII header, the key wrapped
+ * by AES Key Wrap (RFC 3394) under the KEK and the first 8 bytes of AES-CMAC of header and wrapped key
+ * calculated with the KEK.
+ *
+ * <p>
+ * Header: key block identifier {@code B0} (2), version (2), key usage (2), algorithm {@code T} or {@code A} (1),
+ * key length {@code 1}, {@code 2} or {@code 3} for 16, 24 or 32 bytes (1), protection mode (2), reserved (6).
+ * </p>
+ */
+public final class TR31KeyBlock {
+
+    public static final int HEADER_LENGTH = 16;
+    public static final int MAC_LENGTH = 8;
+
+    private static final String IDENTIFIER = "B0";
+    private static final String WRAP_ALGORITHM = "AESWrap";
+    private static final String MAC_ALGORITHM = "AESCMAC";
+    // AES Key Wrap of the smallest (8 byte) key
+    private static final int MIN_WRAPPED_KEY_LENGTH = 16;
+    private static final int WRAP_BLOCK_LENGTH = 8;
+
+    private final byte[] header;
+    private final byte[] wrappedKey;
+    private final byte[] mac;
+
+    private TR31KeyBlock(byte[] header, byte[] wrappedKey, byte[] mac) {
+        this.header = header;
+        this.wrappedKey = wrappedKey;
+        this.mac = mac;
+    }
+
+    /**
+     * Splits the key block, neither the MAC nor the key are verified.
+     *
+     * @throws IllegalArgumentException when the key block is malformed
+     */
+    public static TR31KeyBlock parse(byte[] keyBlock) {
+        int wrappedKeyLength = keyBlock.length - HEADER_LENGTH - MAC_LENGTH;
+        if (wrappedKeyLength < MIN_WRAPPED_KEY_LENGTH || wrappedKeyLength % WRAP_BLOCK_LENGTH != 0) {
+            throw new IllegalArgumentException("Invalid key block length " + keyBlock.length);
+        }
+        if (keyBlock[0] != IDENTIFIER.charAt(0) || keyBlock[1] != IDENTIFIER.charAt(1)) {
+            throw new IllegalArgumentException("Key block identifier must be " + IDENTIFIER);
+        }
+
+        return new TR31KeyBlock(
+            Arrays.copyOfRange(keyBlock, 0, HEADER_LENGTH),
+            Arrays.copyOfRange(keyBlock, HEADER_LENGTH, HEADER_LENGTH + wrappedKeyLength),
+            Arrays.copyOfRange(keyBlock, HEADER_LENGTH + wrappedKeyLength, keyBlock.length));
+    }
+
+    /**
+     * Wraps the key under the KEK and calculates MAC of the key block.
+     *
+     * @param header - {@value #HEADER_LENGTH} byte header
+     * @param key    - raw key, its algorithm is taken from the header
+     */
+    public static TR31KeyBlock create(byte[] header, byte[] key, SecretKey kek) throws GeneralSecurityException {
+        if (header.length != HEADER_LENGTH) {
+            throw new IllegalArgumentException("Header must have " + HEADER_LENGTH + " bytes");
+        }
+        TR31KeyBlock keyBlock = new TR31KeyBlock(header.clone(), null, null);
+
+        Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM, CryptoUtils.getProvider(WRAP_ALGORITHM));
+        cipher.init(Cipher.WRAP_MODE, kek);
+        byte[] wrappedKey = cipher.wrap(new SecretKeySpec(key, keyBlock.keyAlgorithm()));
+
+        return new TR31KeyBlock(keyBlock.header, wrappedKey, calculateMac(keyBlock.header, wrappedKey, kek));
+    }
+
+    /**
+     * @return key usage from the header, e.g. {@code P0} for a PIN encryption key
+     */
+    public String keyUsage() {
+        return new String(header, 4, 2, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return JCA algorithm of the wrapped key
+     */
+    public String keyAlgorithm() {
+        return switch (header[6]) {
+            case 'T' -> "DESede";
+            case 'A' -> "AES";
+            default -> throw new IllegalArgumentException("Unsupported key algorithm " + (char) header[6]);
+        };
+    }
+
+    /**
+     * @return length of the wrapped key in bytes as declared by the header
+     * @throws IllegalArgumentException when the length is not valid for the key algorithm
+     */
+    public int keyLength() {
+        int keyLength = switch (header[7]) {
+            case '1' -> 16;
+            case '2' -> 24;
+            case '3' -> 32;
+            default -> throw new IllegalArgumentException("Unsupported key length " + (char) header[7]);
+        };
+        if ("DESede".equals(keyAlgorithm()) && keyLength > 24) {
+            throw new IllegalArgumentException("Unsupported TDES key length " + keyLength);
+        }
+        return keyLength;
+    }
+
+    /**
+     * Verifies MAC of the key block in constant time.
+     */
+    public boolean verifyMac(SecretKey kek) throws GeneralSecurityException {
+        return MessageDigest.isEqual(mac, calculateMac(header, wrappedKey, kek));
+    }
+
+    /**
+     * Unwraps the key, the MAC should be verified first.
+     *
+     * @return raw key, owned by the caller
+     */
+    public byte[] unwrapKey(SecretKey kek) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM, CryptoUtils.getProvider(WRAP_ALGORITHM));
+        cipher.init(Cipher.UNWRAP_MODE, kek);
+
+        return cipher.unwrap(wrappedKey, keyAlgorithm(), Cipher.SECRET_KEY).getEncoded();
+    }
+
+    /**
+     * @return header, wrapped key and MAC
+     */
+    public byte[] encode() {
+        byte[] keyBlock = Arrays.copyOf(header, HEADER_LENGTH + wrappedKey.length + MAC_LENGTH);
+        System.arraycopy(wrappedKey, 0, keyBlock, HEADER_LENGTH, wrappedKey.length);
+        System.arraycopy(mac, 0, keyBlock, HEADER_LENGTH + wrappedKey.length, MAC_LENGTH);
+        return keyBlock;
+    }
+
+    private static byte[] calculateMac(byte[] header, byte[] wrappedKey, SecretKey kek) throws GeneralSecurityException {
+        Mac cmac = Mac.getInstance(MAC_ALGORITHM, CryptoUtils.getProvider(MAC_ALGORITHM));
+        cmac.init(kek);
+        cmac.update(header);
+        cmac.update(wrappedKey);
+
+        return Arrays.copyOf(cmac.doFinal(), MAC_LENGTH);
+    }
+}
@@ -0,0 +1,13 @@
+-- AES-256 key encryption keys (KEK), wrapped by the Key Vault master key (RSA-OAEP-256)
+CREATE TABLE key_encryption_key
+(
+    id               BIGSERIAL PRIMARY KEY,
+    kek_version      INTEGER                             NOT NULL UNIQUE,
+    key_data         TEXT                                NOT NULL,
+    master_key_alias VARCHAR(255)                        NOT NULL,
+    created          TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+-- Version of the KEK which wraps key_data (AES-GCM), NULL means key_data is wrapped directly by the master key
+ALTER TABLE cryptographic_key
+    ADD COLUMN kek_version INTEGER;
@@ -0,0 +1,9 @@
+-- Hibernate cannot batch inserts of IDENTITY ids, ids are allocated from a sequence in blocks of 50 instead
+-- (pooled optimizer - a block ends with the value returned by nextval)
+CREATE SEQUENCE cryptographic_key_seq INCREMENT BY 50;
+SELECT setval('cryptographic_key_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM cryptographic_key), false);
+
+ALTER TABLE cryptographic_key
+    ALTER COLUMN id SET DEFAULT nextval('cryptographic_key_seq');
+ALTER SEQUENCE cryptographic_key_seq OWNED BY cryptographic_key.id;
+DROP SEQUENCE cryptographic_key_id_seq;
@@ -0,0 +1,6 @@
+-- Keys are looked up by alias and version, a key must not exist twice
+CREATE UNIQUE INDEX cryptographic_key_alias_version_idx ON cryptographic_key (key_alias, key_version);
+
+-- Wrapped key data is stored as bytes instead of hex text
+ALTER TABLE cryptographic_key
+    ALTER COLUMN key_data TYPE BYTEA USING decode(key_data, 'hex');
@@ -0,0 +1,6 @@
+-- Key cache misses record the load, warmup preloads the keys loaded most often on the day of their last load
+ALTER TABLE cryptographic_key
+    ADD COLUMN last_loaded TIMESTAMP,
+    ADD COLUMN load_count  BIGINT DEFAULT 0 NOT NULL;
+
+COMMENT ON COLUMN cryptographic_key.load_count IS 'Number of loads on the day of last_loaded';
@@ -0,0 +1,234 @@
+package cz.cloudfield.cloud.crypto.hostcommand;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.CryptoMetricsProperties;
+import cz.cloudfield.cloud.crypto.key.KeyManager;
+import cz.cloudfield.cloud.crypto.payment.*;
+import cz.cloudfield.cloud.crypto.payment.key.HardcodedKeyManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostCommandHandlerTest {
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final String PIN_PAN = "6203011199415646";
+
+    private final KeyManager keyManager = new HardcodedKeyManager();
+    private ForkJoinPool batchPool;
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        batchPool = new ForkJoinPool(1);
+        PaymentCryptoService paymentCryptoService = new PaymentCryptoServiceImpl(keyManager, new UdkCache(new UdkCacheProperties(true, 16)),
+            batchPool, new PaymentBatchProperties(1, 1), new CryptoMetrics(new SimpleMeterRegistry(), new CryptoMetricsProperties(10)));
+
+        // requests are processed on the event loop thread, so responses are written in order
+        channel = new EmbeddedChannel(
+            new LengthFieldBasedFrameDecoder(8192, 0, 2, 0, 2),
+            new LengthFieldPrepender(2),
+            new HostCommandHandler(new HostCommandProcessor(paymentCryptoService), Runnable::run, 16));
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+        batchPool.shutdown();
+    }
+
+    @Test
+    void pipelinedRequests() throws Exception {
+        String pinBlock = new PinBlockConstructor(keyManager).constructPinBlock("1234", PIN_PAN);
+
+        ByteBuf requests = Unpooled.buffer();
+        frame(requests, 1, "KQ", payload -> {
+            writeString(payload, "imk-aes");
+            writeString(payload, "3205984555533619");
+            writeString(payload, "70");
+            payload.writeBytes(HEX.parseHex("0F40"));
+            payload.writeBytes(HEX.parseHex("89C1B64CB92D0ED2"));
+            byte[] transactionData = HEX.parseHex("BD6743E7DC978573998E685E885C");
+            payload.writeShort(transactionData.length).writeBytes(transactionData);
+        });
+        frame(requests, 2, "DE", payload -> pinPayload(payload, "pvk-tdes", pinBlock));
+        frame(requests, 3, "DA", payload -> {
+            pinPayload(payload, "pvk-tdes", pinBlock);
+            writeString(payload, "5740FFFFFFFF");
+        });
+        frame(requests, 4, "DA", payload -> {
+            pinPayload(payload, "pvk-unknown", pinBlock);
+            writeString(payload, "5740FFFFFFFF");
+        });
+        frame(requests, 5, "XX", payload -> {
+        });
+        frame(requests, 6, "NC", payload -> {
+        });
+
+        // all frames arrive in one read
+        channel.writeInbound(requests);
+
+        Map<Integer, ByteBuf> responses = readResponses();
+        assertEquals(6, responses.size());
+
+        assertResponse(responses.get(1), "KR", HostCommandProcessor.OK);
+        assertTrue(responses.get(1).readBoolean());
+
+        assertResponse(responses.get(2), "DF", HostCommandProcessor.OK);
+        assertEquals("5740FFFFFFFF", readString(responses.get(2)));
+
+        assertResponse(responses.get(3), "DB", HostCommandProcessor.OK);
+        assertTrue(responses.get(3).readBoolean());
+
+        assertResponse(responses.get(4), "DB", HostCommandProcessor.KEY_NOT_FOUND);
+        assertResponse(responses.get(5), "XY", HostCommandProcessor.UNKNOWN_COMMAND);
+        assertResponse(responses.get(6), "ND", HostCommandProcessor.OK);
+
+        responses.values().forEach(response -> {
+            assertFalse(response.isReadable());
+            response.release();
+        });
+    }
+
+    @Test
+    void changePin() throws Exception {
+        PinBlockConstructor pinBlockConstructor = new PinBlockConstructor(keyManager);
+        String oldPinBlock = pinBlockConstructor.constructPinBlock("1234", PIN_PAN);
+        String newPinBlock = pinBlockConstructor.constructPinBlock("4321", PIN_PAN);
+
+        ByteBuf requests = Unpooled.buffer();
+        frame(requests, 9, "DU", payload -> changePinPayload(payload, oldPinBlock, newPinBlock));
+        // old PIN does not match its offset
+        frame(requests, 10, "DU", payload -> changePinPayload(payload, newPinBlock, oldPinBlock));
+        channel.writeInbound(requests);
+
+        Map<Integer, ByteBuf> responses = readResponses();
+        assertResponse(responses.get(9), "DV", HostCommandProcessor.OK);
+        String newOffset = readString(responses.get(9));
+        assertNotEquals("5740FFFFFFFF", newOffset);
+        assertResponse(responses.get(10), "DV", HostCommandProcessor.PIN_NOT_VERIFIED);
+        responses.values().forEach(response -> {
+            assertFalse(response.isReadable());
+            response.release();
+        });
+
+        // the new PIN verifies against the new offset
+        requests = Unpooled.buffer();
+        frame(requests, 11, "DA", payload -> {
+            pinPayload(payload, "pvk-tdes", newPinBlock);
+            writeString(payload, newOffset);
+        });
+        channel.writeInbound(requests);
+
+        responses = readResponses();
+        assertResponse(responses.get(11), "DB", HostCommandProcessor.OK);
+        assertTrue(responses.get(11).readBoolean());
+        responses.values().forEach(ByteBuf::release);
+    }
+
+    @Test
+    void rejectMalformedRequests() {
+        ByteBuf requests = Unpooled.buffer();
+        // PIN block and the rest of the payload are missing
+        frame(requests, 7, "DE", payload -> {
+            writeString(payload, "zpk-tdes");
+            writeString(payload, "pvk-tdes");
+        });
+        // trailing bytes after a complete request
+        frame(requests, 8, "NC", payload -> payload.writeByte(0));
+
+        channel.writeInbound(requests);
+
+        Map<Integer, ByteBuf> responses = readResponses();
+        assertResponse(responses.get(7), "DF", HostCommandProcessor.INVALID_REQUEST);
+        assertResponse(responses.get(8), "ND", HostCommandProcessor.INVALID_REQUEST);
+        assertTrue(channel.isActive());
+        responses.values().forEach(ByteBuf::release);
+    }
+
+    @Test
+    void closeConnectionOnFrameShorterThanHeader() {
+        channel.writeInbound(Unpooled.buffer().writeShort(3).writeBytes(new byte[3]));
+
+        assertFalse(channel.isActive());
+    }
+
+    private void pinPayload(ByteBuf payload, String pvkAlias, String pinBlock) {
+        writeString(payload, "zpk-tdes");
+        writeString(payload, pvkAlias);
+        payload.writeBytes(HEX.parseHex(pinBlock));
+        writeString(payload, PIN_PAN);
+        writeString(payload, "123456N12345");
+        writeString(payload, "1234567890987654");
+        payload.writeByte(4);
+    }
+
+    private void changePinPayload(ByteBuf payload, String oldPinBlock, String newPinBlock) {
+        writeString(payload, "zpk-tdes");
+        writeString(payload, "pvk-tdes");
+        payload.writeBytes(HEX.parseHex(oldPinBlock));
+        payload.writeBytes(HEX.parseHex(newPinBlock));
+        writeString(payload, PIN_PAN);
+        writeString(payload, "123456N12345");
+        writeString(payload, "1234567890987654");
+        payload.writeByte(4);
+        writeString(payload, "5740FFFFFFFF");
+    }
+
+    private static void frame(ByteBuf buffer, int correlationId, String command, Consumer<ByteBuf> payloadWriter) {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeInt(correlationId);
+        frame.writeCharSequence(command, StandardCharsets.US_ASCII);
+        payloadWriter.accept(frame);
+
+        buffer.writeShort(frame.readableBytes()).writeBytes(frame);
+        frame.release();
+    }
+
+    /**
+     * @return response frames by correlation ID, positioned after the correlation ID
+     */
+    private Map<Integer, ByteBuf> readResponses() {
+        ByteBuf outbound = Unpooled.buffer();
+        for (ByteBuf part = channel.readOutbound(); part != null; part = channel.readOutbound()) {
+            outbound.writeBytes(part);
+            part.release();
+        }
+
+        Map<Integer, ByteBuf> responses = new HashMap<>();
+        while (outbound.isReadable()) {
+            ByteBuf response = outbound.readRetainedSlice(outbound.readUnsignedShort());
+            responses.put(response.readInt(), response);
+        }
+        outbound.release();
+        return responses;
+    }
+
+    private static void assertResponse(ByteBuf response, String responseCode, byte errorCode) {
+        assertEquals(responseCode, response.readCharSequence(2, StandardCharsets.US_ASCII).toString());
+        assertEquals(errorCode, response.readByte());
+    }
+
+    private static void writeString(ByteBuf buffer, String value) {
+        buffer.writeByte(value.length()).writeCharSequence(value, StandardCharsets.US_ASCII);
+    }
+
+    private static String readString(ByteBuf buffer) {
+        return buffer.readCharSequence(buffer.readUnsignedByte(), StandardCharsets.US_ASCII).toString();
+    }
+}
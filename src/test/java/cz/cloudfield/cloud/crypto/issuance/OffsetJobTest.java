@@ -0,0 +1,111 @@
+package cz.cloudfield.cloud.crypto.issuance;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.CryptoMetricsProperties;
+import cz.cloudfield.cloud.crypto.key.KeyManager;
+import cz.cloudfield.cloud.crypto.payment.PinBlockConstructor;
+import cz.cloudfield.cloud.crypto.payment.key.HardcodedKeyManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffsetJobTest {
+
+    private static final String PAN = "6203011199415646";
+    private static final String PVD = "123456N12345";
+
+    private final KeyManager keyManager = new HardcodedKeyManager();
+    private ForkJoinPool pool;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void calculateOffsets() throws Exception {
+        String pinBlock = new PinBlockConstructor(keyManager).constructPinBlock("1234", PAN);
+        String shortPinBlock = new PinBlockConstructor(keyManager).constructPinBlock("123", PAN);
+        Files.writeString(directory.resolve("cards.csv"), PAN + "," + pinBlock + "," + PVD + "\n"
+            + "\n"
+            + PAN + "," + shortPinBlock + "," + PVD + "\r\n"
+            + PAN + ",ZZ\n"
+            + PAN + "," + pinBlock + "," + PVD);
+
+        // chunks smaller than the file, every chunk holds one or two records
+        OffsetJob job = job(64);
+        job.run();
+
+        OffsetJobStatusDTO status = job.status();
+        assertEquals(OffsetJobStatusDTO.State.COMPLETED, status.state(), status.error());
+        assertEquals(4, status.records());
+        assertEquals(2, status.failedRecords());
+        assertEquals(Files.size(directory.resolve("cards.csv")), status.processedBytes());
+        assertEquals(PAN + ",5740FFFFFFFF,\n"
+            + PAN + ",,Invalid PIN length extracted from PIN Block.\n"
+            + PAN + ",,Record must have 3 fields\n"
+            + PAN + ",5740FFFFFFFF,\n", Files.readString(directory.resolve("offsets.csv")));
+        assertFalse(Files.exists(directory.resolve("offsets.csv.checkpoint")));
+    }
+
+    @Test
+    void resumeFromCheckpoint() throws Exception {
+        String pinBlock = new PinBlockConstructor(keyManager).constructPinBlock("1234", PAN);
+        String record = PAN + "," + pinBlock + "," + PVD + "\n";
+        String result = PAN + ",5740FFFFFFFF,\n";
+        Path input = directory.resolve("cards.csv");
+        Files.writeString(input, record.repeat(10));
+
+        // the previous run wrote 4 records, then the output was partially written before the crash
+        Path output = directory.resolve("offsets.csv");
+        Files.writeString(output, result.repeat(5) + "6203");
+        new OffsetJobCheckpoint(input.toString(), Files.size(input), 4L * record.length(), 4L * result.length(), 4, 0)
+            .write(OffsetJobCheckpoint.path(output));
+
+        OffsetJob job = job(3 * record.length());
+        job.run();
+
+        OffsetJobStatusDTO status = job.status();
+        assertEquals(OffsetJobStatusDTO.State.COMPLETED, status.state(), status.error());
+        assertEquals(10, status.records());
+        assertEquals(result.repeat(10), Files.readString(output));
+        assertFalse(Files.exists(OffsetJobCheckpoint.path(output)));
+    }
+
+    @Test
+    void failOnRecordLongerThanChunk() throws Exception {
+        Files.writeString(directory.resolve("cards.csv"), "x".repeat(100) + "\n" + "x".repeat(10) + "\n");
+        Files.writeString(directory.resolve("offsets.csv"), "previous output", StandardOpenOption.CREATE);
+
+        OffsetJob job = job(64);
+        job.run();
+
+        OffsetJobStatusDTO status = job.status();
+        assertEquals(OffsetJobStatusDTO.State.FAILED, status.state());
+        assertEquals("Record at byte 0 is longer than 64 bytes", status.error());
+        assertEquals(0, status.records());
+    }
+
+    private OffsetJob job(int chunkSize) {
+        OffsetJobRequestDTO request = new OffsetJobRequestDTO("cards.csv", "offsets.csv", "zpk-tdes", "pvk-tdes", "1234567890987654", 4);
+        return new OffsetJob("test", request, directory.resolve(request.inputFile()), directory.resolve(request.outputFile()), keyManager, pool,
+            new CryptoMetrics(new SimpleMeterRegistry(), new CryptoMetricsProperties(10)), chunkSize);
+    }
+}
@@ -0,0 +1,112 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.CryptoMetricsProperties;
+import cz.cloudfield.cloud.crypto.CryptographyProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static cz.cloudfield.cloud.crypto.key.KeyEncryptionKeyManagerTest.MASTER_KEY_ALIAS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DatabaseKeyManagerTest {
+
+    private static final byte[] ZPK = HexFormat.of().parseHex("0123456789ABCDEFFEDCBA98765432100123456789ABCDEF");
+    private static final byte[] IMK = HexFormat.of().parseHex("000102030405060708090A0B0C0D0E0F");
+
+    private final CryptographyProvider cryptographyProvider = KeyEncryptionKeyManagerTest.masterKey();
+    private final CryptographicKeyRepository cryptographicKeyRepository = mock(CryptographicKeyRepository.class);
+    private final KeyEncryptionKeyManager keyEncryptionKeyManager = new KeyEncryptionKeyManager(
+        keyEncryptionKeyRepository(), cryptographyProvider, MASTER_KEY_ALIAS);
+
+    @Test
+    void rewrapKeysMigratesKeysToCurrentKeyEncryptionKey() {
+        // created before envelope encryption
+        CryptographicKeyEntity masterKeyWrapped = key("zpk-tdes", cryptographyProvider.encrypt("RSA-OAEP-256", ZPK, MASTER_KEY_ALIAS), null);
+        KeyEncryptionKeyManager.WrappedKey wrapped = keyEncryptionKeyManager.wrap(IMK, "imk-aes", "01");
+        CryptographicKeyEntity previousKekWrapped = key("imk-aes", wrapped.data(), wrapped.kekVersion());
+        int kekVersion = keyEncryptionKeyManager.rotate();
+        when(cryptographicKeyRepository.findByKekVersionIsNullOrKekVersionNot(kekVersion))
+            .thenReturn(List.of(masterKeyWrapped, previousKekWrapped));
+
+        UnwrappedKeyCache unwrappedKeyCache = new UnwrappedKeyCache(
+            new KeyCacheProperties(Duration.ofMinutes(15), Duration.ofSeconds(30), 100, Duration.ofMinutes(1)), metrics());
+        try {
+            DatabaseKeyManager keyManager = new DatabaseKeyManager(cryptographicKeyRepository, mock(KeyLoader.class),
+                cryptographyProvider, keyEncryptionKeyManager, unwrappedKeyCache, metrics(), MASTER_KEY_ALIAS);
+
+            assertEquals(2, keyManager.rewrapKeys());
+        } finally {
+            unwrappedKeyCache.close();
+        }
+
+        verify(cryptographicKeyRepository).saveAll(List.of(masterKeyWrapped, previousKekWrapped));
+        assertEquals(kekVersion, masterKeyWrapped.getKekVersion());
+        assertEquals(kekVersion, previousKekWrapped.getKekVersion());
+        assertArrayEquals(ZPK, keyEncryptionKeyManager.unwrap(kekVersion, masterKeyWrapped.getKeyData(), "zpk-tdes", "01"));
+        assertArrayEquals(IMK, keyEncryptionKeyManager.unwrap(kekVersion, previousKekWrapped.getKeyData(), "imk-aes", "01"));
+    }
+
+    @Test
+    void onlyAliasesOfLoadedKeysAreMetricTags() {
+        KeyEncryptionKeyManager.WrappedKey wrapped = keyEncryptionKeyManager.wrap(IMK, "imk-aes", "01");
+        KeyLoader keyLoader = mock(KeyLoader.class);
+        when(keyLoader.loadKey(anyString(), eq("01"))).thenReturn(Optional.empty());
+        when(keyLoader.loadKey("imk-aes", "01"))
+            .thenReturn(Optional.of(new StoredKey("imk-aes", "01", "AES", "IMK", wrapped.data(), wrapped.kekVersion())));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CryptoMetrics metrics = new CryptoMetrics(meterRegistry, new CryptoMetricsProperties(100));
+
+        UnwrappedKeyCache unwrappedKeyCache = new UnwrappedKeyCache(
+            new KeyCacheProperties(Duration.ofMinutes(15), Duration.ofSeconds(30), 100, Duration.ofMinutes(1)), metrics);
+        try {
+            DatabaseKeyManager keyManager = new DatabaseKeyManager(cryptographicKeyRepository, keyLoader,
+                cryptographyProvider, keyEncryptionKeyManager, unwrappedKeyCache, metrics, MASTER_KEY_ALIAS);
+
+            assertThrows(KeyNotFoundException.class, () -> keyManager.getKey("unknown-alias", "01"));
+            assertArrayEquals(IMK, keyManager.getKey("imk-aes", "01").getEncoded());
+        } finally {
+            unwrappedKeyCache.close();
+        }
+
+        Set<String> aliases = meterRegistry.getMeters().stream()
+            .map(meter -> meter.getId().getTag("alias"))
+            .collect(Collectors.toSet());
+        assertEquals(Set.of("imk-aes", CryptoMetrics.OTHER_ALIAS), aliases);
+        assertNotNull(meterRegistry.find(CryptoMetrics.STAGE_TIMER).tags("alias", "imk-aes", "stage", "key-lookup").timer());
+    }
+
+    private static CryptographicKeyEntity key(String alias, byte[] keyData, Integer kekVersion) {
+        CryptographicKeyEntity key = new CryptographicKeyEntity();
+        key.setKeyAlias(alias);
+        key.setKeyVersion("01");
+        key.setKeyData(keyData);
+        key.setKekVersion(kekVersion);
+        return key;
+    }
+
+    private static KeyEncryptionKeyRepository keyEncryptionKeyRepository() {
+        List<KeyEncryptionKeyEntity> table = new ArrayList<>();
+        KeyEncryptionKeyRepository repository = mock(KeyEncryptionKeyRepository.class);
+        when(repository.findAllByOrderByKekVersionAsc()).thenAnswer(invocation -> List.copyOf(table));
+        when(repository.save(any())).thenAnswer(invocation -> {
+            table.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        return repository;
+    }
+
+    private static CryptoMetrics metrics() {
+        return new CryptoMetrics(new SimpleMeterRegistry(), new CryptoMetricsProperties(100));
+    }
+}
@@ -0,0 +1,134 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import cz.cloudfield.cloud.crypto.CryptographyProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class KeyEncryptionKeyManagerTest {
+
+    static final String MASTER_KEY_ALIAS = "master-key";
+    private static final byte[] KEY = HexFormat.of().parseHex("0123456789ABCDEFFEDCBA98765432100123456789ABCDEF");
+
+    // key_encryption_key table with the unique kek_version
+    private final List<KeyEncryptionKeyEntity> table = new CopyOnWriteArrayList<>();
+    private final KeyEncryptionKeyRepository repository = mock(KeyEncryptionKeyRepository.class);
+    private final CryptographyProvider cryptographyProvider = masterKey();
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findAllByOrderByKekVersionAsc()).thenAnswer(invocation -> table.stream()
+            .sorted(Comparator.comparing(KeyEncryptionKeyEntity::getKekVersion))
+            .toList());
+        when(repository.save(any())).thenAnswer(invocation -> {
+            KeyEncryptionKeyEntity entity = invocation.getArgument(0);
+            if (table.stream().anyMatch(stored -> stored.getKekVersion().equals(entity.getKekVersion()))) {
+                throw new DataIntegrityViolationException("duplicate kek_version " + entity.getKekVersion());
+            }
+            table.add(entity);
+            return entity;
+        });
+    }
+
+    @Test
+    void wrapAndUnwrap() {
+        KeyEncryptionKeyManager keyEncryptionKeyManager = newManager();
+
+        KeyEncryptionKeyManager.WrappedKey wrapped = keyEncryptionKeyManager.wrap(KEY, "zpk-tdes", "01");
+
+        assertEquals(1, wrapped.kekVersion());
+        assertEquals(1, table.size());
+        assertArrayEquals(KEY, keyEncryptionKeyManager.unwrap(wrapped.kekVersion(), wrapped.data(), "zpk-tdes", "01"));
+        // only the KEK was wrapped by the master key
+        verify(cryptographyProvider).encrypt(eq("RSA-OAEP-256"), any(), eq(MASTER_KEY_ALIAS));
+        verify(cryptographyProvider).decrypt(eq("RSA-OAEP-256"), any(), eq(MASTER_KEY_ALIAS));
+    }
+
+    @Test
+    void unwrapRejectsOtherAliasOrVersion() {
+        KeyEncryptionKeyManager keyEncryptionKeyManager = newManager();
+        KeyEncryptionKeyManager.WrappedKey wrapped = keyEncryptionKeyManager.wrap(KEY, "zpk-tdes", "01");
+
+        assertThrows(IllegalStateException.class, () -> keyEncryptionKeyManager.unwrap(wrapped.kekVersion(), wrapped.data(), "pvk-tdes", "01"));
+        assertThrows(IllegalStateException.class, () -> keyEncryptionKeyManager.unwrap(wrapped.kekVersion(), wrapped.data(), "zpk-tdes", "02"));
+
+        byte[] tampered = wrapped.data().clone();
+        tampered[tampered.length - 1] ^= 1;
+        assertThrows(IllegalStateException.class, () -> keyEncryptionKeyManager.unwrap(wrapped.kekVersion(), tampered, "zpk-tdes", "01"));
+    }
+
+    @Test
+    void unwrapAfterRotation() {
+        KeyEncryptionKeyManager keyEncryptionKeyManager = newManager();
+        KeyEncryptionKeyManager.WrappedKey previous = keyEncryptionKeyManager.wrap(KEY, "zpk-tdes", "01");
+
+        assertEquals(2, keyEncryptionKeyManager.rotate());
+        KeyEncryptionKeyManager.WrappedKey current = keyEncryptionKeyManager.wrap(KEY, "zpk-tdes", "01");
+
+        assertEquals(2, current.kekVersion());
+        assertArrayEquals(KEY, keyEncryptionKeyManager.unwrap(previous.kekVersion(), previous.data(), "zpk-tdes", "01"));
+        assertArrayEquals(KEY, keyEncryptionKeyManager.unwrap(current.kekVersion(), current.data(), "zpk-tdes", "01"));
+    }
+
+    @Test
+    void unwrapReloadsVersionCreatedByOtherInstance() {
+        KeyEncryptionKeyManager instance = newManager();
+        KeyEncryptionKeyManager otherInstance = newManager();
+        instance.initialize();
+        otherInstance.initialize();
+
+        otherInstance.rotate();
+        KeyEncryptionKeyManager.WrappedKey wrapped = otherInstance.wrap(KEY, "zpk-tdes", "01");
+
+        assertEquals(1, instance.currentVersion());
+        assertArrayEquals(KEY, instance.unwrap(wrapped.kekVersion(), wrapped.data(), "zpk-tdes", "01"));
+        assertEquals(2, instance.currentVersion());
+        assertThrows(IllegalStateException.class, () -> instance.unwrap(3, wrapped.data(), "zpk-tdes", "01"));
+    }
+
+    @Test
+    void rotateFollowsVersionCreatedByOtherInstance() {
+        KeyEncryptionKeyManager instance = newManager();
+        KeyEncryptionKeyManager otherInstance = newManager();
+        instance.initialize();
+        otherInstance.initialize();
+
+        assertEquals(2, otherInstance.rotate());
+        assertEquals(3, instance.rotate());
+
+        assertEquals(List.of(1, 2, 3), table.stream().map(KeyEncryptionKeyEntity::getKekVersion).sorted().toList());
+    }
+
+    private KeyEncryptionKeyManager newManager() {
+        return new KeyEncryptionKeyManager(repository, cryptographyProvider, MASTER_KEY_ALIAS);
+    }
+
+    /**
+     * Mocked Key Vault master key, "encryption" reverses the bytes.
+     */
+    static CryptographyProvider masterKey() {
+        CryptographyProvider cryptographyProvider = mock(CryptographyProvider.class);
+        when(cryptographyProvider.encrypt(eq("RSA-OAEP-256"), any(), eq(MASTER_KEY_ALIAS)))
+            .thenAnswer(invocation -> reverse(invocation.getArgument(1)));
+        when(cryptographyProvider.decrypt(eq("RSA-OAEP-256"), any(), eq(MASTER_KEY_ALIAS)))
+            .thenAnswer(invocation -> reverse(invocation.getArgument(1)));
+        return cryptographyProvider;
+    }
+
+    private static byte[] reverse(byte[] data) {
+        byte[] reversed = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            reversed[i] = data[data.length - 1 - i];
+        }
+        return reversed;
+    }
+}
@@ -0,0 +1,117 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import cz.cloudfield.cloud.crypto.payment.TR31KeyBlockWithMACExample;
+import cz.cloudfield.cloud.crypto.payment.key.HardcodedKeyManager;
+import cz.cloudfield.cloud.crypto.utils.TR31KeyBlock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyImportServiceTest {
+
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+    private static final byte[] ZPK = HEX.parseHex("0123456789ABCDEFFEDCBA9876543210");
+    private static final byte[] IMK = HEX.parseHex("F78AFE0DE1BBE7AE28C0450CE43C084F4BBB2BF1839DEE466D852CB5BE6A61AA");
+
+    private final KeyManager keyManager = new HardcodedKeyManager();
+    private final SecretKey kek = keyManager.getKey("kek-aes", "01");
+    private ForkJoinPool batchPool;
+    private KeyImportService keyImportService;
+
+    @BeforeEach
+    void setUp() {
+        batchPool = new ForkJoinPool(2);
+        keyImportService = new KeyImportService(keyManager, batchPool, new KeyImportProperties(100, 100));
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchPool.shutdown();
+    }
+
+    @Test
+    void importKeyBlocks() throws Exception {
+        String zpkBlock = keyBlock("P0", 'T', ZPK, kek);
+        String imkBlock = keyBlock("E0", 'A', IMK.length, IMK, kek);
+        // last MAC byte changed
+        String tamperedBlock = zpkBlock.substring(0, zpkBlock.length() - 2) + (zpkBlock.endsWith("00") ? "01" : "00");
+        String otherKekBlock = keyBlock("P0", 'T', ZPK, new SecretKeySpec(new byte[32], "AES"));
+
+        List<KeyImportResultDTO> results = keyImportService.importKeys(new KeyImportRequestDTO("kek-aes", List.of(
+            new KeyImportRequestDTO.KeyBlock("import-zpk", "01", zpkBlock),
+            new KeyImportRequestDTO.KeyBlock("import-imk", "01", imkBlock),
+            new KeyImportRequestDTO.KeyBlock("import-zpk", "01", imkBlock),
+            new KeyImportRequestDTO.KeyBlock("import-tampered", "01", tamperedBlock),
+            new KeyImportRequestDTO.KeyBlock("import-other-kek", "01", otherKekBlock),
+            new KeyImportRequestDTO.KeyBlock("import-usage", "01", keyBlock("X9", 'T', ZPK, kek)),
+            new KeyImportRequestDTO.KeyBlock("import-malformed", "01", "B0"),
+            // header declares a double-length key
+            new KeyImportRequestDTO.KeyBlock("import-length", "01", keyBlock("E0", 'A', 16, IMK, kek))
+        )));
+
+        assertEquals(new KeyImportResultDTO("import-zpk", "01", "ZPK", true, null), results.get(0));
+        assertEquals(new KeyImportResultDTO("import-imk", "01", "IMK", true, null), results.get(1));
+        assertEquals("Duplicate key import-zpk version 01", results.get(2).error());
+        assertEquals("Key block MAC verification failed", results.get(3).error());
+        assertEquals("Key block MAC verification failed", results.get(4).error());
+        assertEquals("Unsupported key usage X9", results.get(5).error());
+        assertFalse(results.get(6).imported());
+        assertEquals("Key length 32 does not match header key length 16", results.get(7).error());
+
+        // double length TDES key is stored as K1 K2 K1
+        assertEquals(HEX.formatHex(ZPK) + HEX.formatHex(ZPK, 0, 8), HEX.formatHex(keyManager.getKey("import-zpk", "01").getEncoded()));
+        assertArrayEquals(IMK, keyManager.getKey("import-imk", "01").getEncoded());
+        assertThrows(KeyNotFoundException.class, () -> keyManager.getKey("import-tampered", "01"));
+        assertThrows(KeyNotFoundException.class, () -> keyManager.getKey("import-length", "01"));
+    }
+
+    @Test
+    void existingKeyDoesNotFailOtherKeyBlocks() throws Exception {
+        byte[] zpk = keyManager.getKey("zpk-tdes", "01").getEncoded();
+
+        List<KeyImportResultDTO> results = keyImportService.importKeys(new KeyImportRequestDTO("kek-aes", List.of(
+            new KeyImportRequestDTO.KeyBlock("zpk-tdes", "01", keyBlock("P0", 'T', ZPK, kek)),
+            new KeyImportRequestDTO.KeyBlock("import-existing-imk", "01", keyBlock("E0", 'A', IMK, kek))
+        )));
+
+        assertEquals(new KeyImportResultDTO("zpk-tdes", "01", null, false, "Key zpk-tdes version 01 already exists"), results.get(0));
+        assertEquals(new KeyImportResultDTO("import-existing-imk", "01", "IMK", true, null), results.get(1));
+        assertArrayEquals(zpk, keyManager.getKey("zpk-tdes", "01").getEncoded());
+        assertArrayEquals(IMK, keyManager.getKey("import-existing-imk", "01").getEncoded());
+    }
+
+    @Test
+    void rejectUnknownKek() {
+        assertThrows(KeyNotFoundException.class, () -> keyImportService.importKeys(new KeyImportRequestDTO("kek-unknown", List.of())));
+    }
+
+    @Test
+    void rejectKekOfOtherType() throws Exception {
+        // valid AES key, but stored as ZPK
+        keyManager.createKey("zpk-aes", "01", "AES", "ZPK", new byte[32]);
+        String zpkBlock = keyBlock("P0", 'T', ZPK, new SecretKeySpec(new byte[32], "AES"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> keyImportService.importKeys(
+            new KeyImportRequestDTO("zpk-aes", List.of(new KeyImportRequestDTO.KeyBlock("import-by-zpk", "01", zpkBlock)))));
+
+        assertEquals("Key zpk-aes of type ZPK is not a KEK", e.getMessage());
+        assertThrows(KeyNotFoundException.class, () -> keyManager.getKey("import-by-zpk", "01"));
+    }
+
+    private static String keyBlock(String keyUsage, char algorithm, byte[] key, SecretKey kek) throws Exception {
+        return keyBlock(keyUsage, algorithm, key.length, key, kek);
+    }
+
+    private static String keyBlock(String keyUsage, char algorithm, int keyLength, byte[] key, SecretKey kek) throws Exception {
+        byte[] header = TR31KeyBlockWithMACExample.constructTR31Header(keyUsage, algorithm, keyLength);
+        return HEX.formatHex(TR31KeyBlock.create(header, key, kek).encode());
+    }
+}
@@ -0,0 +1,105 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import cz.cloudfield.cloud.crypto.CryptographyProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Batch key creation against PostgreSQL, the controller is bound to {@link DatabaseKeyManager} instead of the test
+ * key manager.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class KeyManagementControllerIT {
+
+    // more than hibernate.jdbc.batch_size, so the keys are inserted by several JDBC batches
+    private static final int BATCH_SIZE = 120;
+
+    @Autowired
+    private DatabaseKeyManager databaseKeyManager;
+
+    @Autowired
+    private KeyImportService keyImportService;
+
+    @Autowired
+    private CryptographicKeyRepository cryptographicKeyRepository;
+
+    @MockitoBean
+    private CryptographyProvider cryptographyProvider;
+
+    private KeyManagementController controller;
+
+    @BeforeEach
+    void setUp() {
+        // master key "encryption" reverses the bytes
+        when(cryptographyProvider.encrypt(eq("RSA-OAEP-256"), any(), any())).thenAnswer(invocation -> reverse(invocation.getArgument(1)));
+        when(cryptographyProvider.decrypt(eq("RSA-OAEP-256"), any(), any())).thenAnswer(invocation -> reverse(invocation.getArgument(1)));
+
+        controller = new KeyManagementController(databaseKeyManager, keyImportService, new KeyImportProperties(100, BATCH_SIZE));
+    }
+
+    @Test
+    void createKeysInSeveralJdbcBatches() {
+        String prefix = "batch-" + UUID.randomUUID() + "-";
+        List<CreateKeyRequestDTO> requests = requests(prefix, BATCH_SIZE);
+
+        controller.createKeys(requests);
+
+        List<String> aliases = requests.stream().map(CreateKeyRequestDTO::keyAlias).toList();
+        assertEquals(BATCH_SIZE, cryptographicKeyRepository.findByKeyAliasIn(aliases).size());
+        for (int i = 0; i < BATCH_SIZE; i += 17) {
+            assertArrayEquals(keyData(i), databaseKeyManager.getKey(prefix + i, "01").getEncoded());
+        }
+        // key material of the request is not kept
+        requests.forEach(request -> assertArrayEquals(new byte[16], request.keyData()));
+    }
+
+    @Test
+    void rejectOversizedBatch() {
+        String prefix = "oversized-" + UUID.randomUUID() + "-";
+        List<CreateKeyRequestDTO> requests = requests(prefix, BATCH_SIZE + 1);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> controller.createKeys(requests));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        assertTrue(cryptographicKeyRepository.findByKeyAliasIn(requests.stream().map(CreateKeyRequestDTO::keyAlias).toList()).isEmpty());
+        requests.forEach(request -> assertArrayEquals(new byte[16], request.keyData()));
+    }
+
+    private static List<CreateKeyRequestDTO> requests(String prefix, int count) {
+        List<CreateKeyRequestDTO> requests = new ArrayList<>();
+        IntStream.range(0, count).forEach(i -> requests.add(new CreateKeyRequestDTO(prefix + i, keyData(i), "AES", "01", "DEK")));
+        return requests;
+    }
+
+    private static byte[] keyData(int i) {
+        byte[] keyData = new byte[16];
+        keyData[0] = (byte) (i >> 8);
+        keyData[1] = (byte) i;
+        keyData[15] = 1;
+        return keyData;
+    }
+
+    private static byte[] reverse(byte[] data) {
+        byte[] reversed = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            reversed[i] = data[data.length - 1 - i];
+        }
+        return reversed;
+    }
+}
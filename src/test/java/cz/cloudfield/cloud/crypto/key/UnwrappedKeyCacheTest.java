@@ -0,0 +1,177 @@
+package cz.cloudfield.cloud.crypto.key;
+
+import cz.cloudfield.cloud.crypto.CryptoMetrics;
+import cz.cloudfield.cloud.crypto.CryptoMetricsProperties;
+import cz.cloudfield.cloud.crypto.utils.CryptoUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnwrappedKeyCacheTest {
+
+    private static final byte[] KEY = HexFormat.of().parseHex("000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F");
+    private static final Duration DESTROY_DELAY = Duration.ofSeconds(1);
+    private static final int CALLERS = 32;
+
+    private final UnwrappedKeyCache cache = newCache(Duration.ofSeconds(30));
+    private final AtomicInteger loads = new AtomicInteger();
+    private ExecutorService executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        cache.close();
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        CompletableFuture<CachedSecretKey> loaded = new CompletableFuture<>();
+
+        List<CompletableFuture<CachedSecretKey>> keys = getConcurrently(loaded);
+        CachedSecretKey key = new CachedSecretKey(KEY.clone(), "AES");
+        loaded.complete(key);
+
+        assertEquals(1, loads.get());
+        for (CompletableFuture<CachedSecretKey> waiter : keys) {
+            assertSame(key, waiter.join());
+        }
+        assertSame(key, cache.get("imk-aes", "01", this::load));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void loadFailureReachesAllWaitersAndIsNotCached() throws Exception {
+        CompletableFuture<CachedSecretKey> loaded = new CompletableFuture<>();
+
+        List<CompletableFuture<CachedSecretKey>> keys = getConcurrently(loaded);
+        IllegalStateException failure = new IllegalStateException("Key Vault unavailable");
+        loaded.completeExceptionally(failure);
+
+        assertEquals(1, loads.get());
+        for (CompletableFuture<CachedSecretKey> waiter : keys) {
+            assertSame(failure, assertThrows(CompletionException.class, waiter::join).getCause());
+        }
+        // the next lookup loads again
+        assertNotNull(cache.get("imk-aes", "01", this::load));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void missingKeyIsCachedUntilInvalidated() {
+        assertThrows(KeyNotFoundException.class, () -> cache.get("imk-aes", "01", this::notFound));
+        assertThrows(KeyNotFoundException.class, () -> cache.get("imk-aes", "01", this::load));
+        assertEquals(1, loads.get());
+
+        cache.invalidate("imk-aes", "01");
+
+        assertNotNull(cache.get("imk-aes", "01", this::load));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void missingKeyExpiresAfterNegativeTtl() {
+        Duration negativeTtl = Duration.ofMillis(200);
+        UnwrappedKeyCache cache = newCache(negativeTtl);
+        try {
+            assertThrows(KeyNotFoundException.class, () -> cache.get("imk-aes", "01", this::notFound));
+            assertThrows(KeyNotFoundException.class, () -> cache.get("imk-aes", "01", this::load));
+            assertEquals(1, loads.get());
+
+            await().pollDelay(negativeTtl).atMost(negativeTtl.multipliedBy(10))
+                .ignoreException(KeyNotFoundException.class)
+                .until(() -> cache.get("imk-aes", "01", this::load) != null);
+            assertEquals(2, loads.get());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void evictedKeyIsZeroizedAfterDestroyDelay() throws Exception {
+        CachedSecretKey key = cache.get("imk-aes", "01", () -> new CachedSecretKey(KEY.clone(), "AES"));
+        byte[] expected = CryptoUtils.encrypt(key, new byte[16]);
+        // operation holding the key and a pooled cipher while the key is evicted
+        Cipher cipher = CryptoUtils.borrowCipher(Cipher.ENCRYPT_MODE, key);
+
+        cache.invalidate("imk-aes", "01");
+
+        assertFalse(key.isDestroyed());
+        assertArrayEquals(expected, cipher.doFinal(new byte[16]));
+        CryptoUtils.releaseCipher(Cipher.ENCRYPT_MODE, key, cipher);
+        assertArrayEquals(KEY, key.getEncoded());
+        assertNotSame(key, cache.get("imk-aes", "01", () -> new CachedSecretKey(KEY.clone(), "AES")));
+
+        await().atMost(DESTROY_DELAY.multipliedBy(5)).until(key::isDestroyed);
+        assertThrows(IllegalStateException.class, key::getEncoded);
+        assertThrows(IllegalStateException.class, () -> CryptoUtils.borrowCipher(Cipher.ENCRYPT_MODE, key));
+    }
+
+    @Test
+    void closeZeroizesKeysWithoutDelay() {
+        CachedSecretKey key = cache.get("imk-aes", "01", () -> new CachedSecretKey(KEY.clone(), "AES"));
+
+        cache.close();
+
+        assertTrue(key.isDestroyed());
+    }
+
+    /**
+     * Starts {@value #CALLERS} lookups of the same missing key at once, all of them return before the key is loaded.
+     */
+    private List<CompletableFuture<CachedSecretKey>> getConcurrently(CompletableFuture<CachedSecretKey> loaded) throws Exception {
+        executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<CachedSecretKey>>> lookups = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            lookups.add(executor.submit(() -> {
+                start.await();
+                return cache.getAsync("imk-aes", "01", () -> {
+                    loads.incrementAndGet();
+                    return loaded;
+                });
+            }));
+        }
+        start.countDown();
+
+        List<CompletableFuture<CachedSecretKey>> keys = new ArrayList<>();
+        for (Future<CompletableFuture<CachedSecretKey>> lookup : lookups) {
+            keys.add(lookup.get());
+        }
+        keys.forEach(key -> assertFalse(key.isDone()));
+        return keys;
+    }
+
+    private CachedSecretKey load() {
+        loads.incrementAndGet();
+        return new CachedSecretKey(KEY.clone(), "AES");
+    }
+
+    private CachedSecretKey notFound() {
+        loads.incrementAndGet();
+        throw new KeyNotFoundException("imk-aes");
+    }
+
+    private static UnwrappedKeyCache newCache(Duration negativeTtl) {
+        return new UnwrappedKeyCache(
+            new KeyCacheProperties(Duration.ofMinutes(15), negativeTtl, 100, DESTROY_DELAY),
+            new CryptoMetrics(new SimpleMeterRegistry(), new CryptoMetricsProperties(100)));
+    }
+}
@@ -1,5 +1,6 @@
 package cz.cloudfield.cloud.crypto.payment;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import cz.cloudfield.cloud.crypto.CryptographyProvider;
 import org.junit.jupiter.api.Test;
@@ -11,6 +12,9 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.HexFormat;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -89,4 +93,81 @@ public class PaymentCryptoControllerIT {
         assertNotNull(response);
         assertTrue(response.pinVerificationResult());
     }
+
+    @Test
+    void verifyPinBatch() throws Exception {
+        String pan = "6203011199415646";
+
+        List<VerifyPinRequestDTO> requests = List.of(
+            new VerifyPinRequestDTO("zpk-tdes", pinBlockConstructor.constructPinBlock("1234", pan), "pvk-tdes", pan, "123456N12345", "1234567890987654", 4, "5740FFFFFFFF"),
+            new VerifyPinRequestDTO("zpk-tdes", pinBlockConstructor.constructPinBlock("4321", pan), "pvk-tdes", pan, "123456N12345", "1234567890987654", 4, "5740FFFFFFFF"),
+            new VerifyPinRequestDTO("zpk-tdes", pinBlockConstructor.constructPinBlock("1234", pan), "pvk-unknown", pan, "123456N12345", "1234567890987654", 4, "5740FFFFFFFF")
+        );
+
+        MvcResult result = mockMvc.perform(post("/api/payment-crypto/verify-pin/batch")
+                .content(objectMapper.writeValueAsBytes(requests))
+                .contentType(APPLICATION_JSON))
+            .andExpectAll(status().isOk())
+            .andReturn();
+
+        List<BatchResultDTO<VerifyPinResponseDTO>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        assertEquals(3, response.size());
+        assertTrue(response.get(0).result().pinVerificationResult());
+        assertFalse(response.get(1).result().pinVerificationResult());
+        assertEquals("Key not found: pvk-unknown", response.get(2).error());
+    }
+
+    @Test
+    void changePin() throws Exception {
+        String pan = "6203011199415646";
+
+        ChangePinRequestDTO request = new ChangePinRequestDTO(
+            "zpk-tdes",
+            pinBlockConstructor.constructPinBlock("1234", pan),
+            pinBlockConstructor.constructPinBlock("5678", pan),
+            "pvk-tdes",
+            pan,
+            "123456N12345",
+            "1234567890987654",
+            4,
+            "5740FFFFFFFF"
+        );
+
+        MvcResult result = mockMvc.perform(post("/api/payment-crypto/change-pin")
+                .content(objectMapper.writeValueAsBytes(request))
+                .contentType(APPLICATION_JSON))
+            .andExpectAll(status().isOk())
+            .andReturn();
+
+        ChangePinResponseDTO response = objectMapper.readValue(result.getResponse().getContentAsString(), ChangePinResponseDTO.class);
+        assertTrue(response.pinVerificationResult());
+        assertEquals("1306FFFFFFFF", response.offset());
+    }
+
+    @Test
+    void verifyArqcBatch() throws Exception {
+        byte[] arqc = HexFormat.of().parseHex("89C1B64CB92D0ED2");
+        byte[] wrongArqc = HexFormat.of().parseHex("0000000000000000");
+
+        List<VerifyArqcRequestDTO> requests = List.of(
+            new VerifyArqcRequestDTO("imk-aes", "BD6743E7DC978573998E685E885C", "0F40", "3205984555533619", "70", arqc),
+            new VerifyArqcRequestDTO("imk-unknown", "BD6743E7DC978573998E685E885C", "0F40", "3205984555533619", "70", arqc),
+            new VerifyArqcRequestDTO("imk-aes", "BD6743E7DC978573998E685E885C", "0F40", "3205984555533619", "70", wrongArqc)
+        );
+
+        MvcResult result = mockMvc.perform(post("/api/payment-crypto/verify-arqc/batch")
+                .content(objectMapper.writeValueAsBytes(requests))
+                .contentType(APPLICATION_JSON))
+            .andExpectAll(status().isOk())
+            .andReturn();
+
+        List<BatchResultDTO<VerifyArqcResponseDTO>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        assertEquals(3, response.size());
+        assertTrue(response.get(0).result().arqcVerificationResult());
+        assertNull(response.get(1).result());
+        assertEquals("Key not found: imk-unknown", response.get(1).error());
+        assertFalse(response.get(2).result().arqcVerificationResult());
+    }
 }
@@ -0,0 +1,96 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.cloudfield.cloud.crypto.CryptographyProvider;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ReactivePaymentCryptoControllerIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PinBlockConstructor pinBlockConstructor;
+
+    @MockitoBean
+    private CryptographyProvider cryptographyProvider;
+
+    @Test
+    void verifyArqc() throws Exception {
+        VerifyArqcRequestDTO request = new VerifyArqcRequestDTO("imk-aes", "BD6743E7DC978573998E685E885C", "0F40", "3205984555533619", "70",
+            HexFormat.of().parseHex("89C1B64CB92D0ED2"));
+
+        MvcResult result = perform("/api/reactive/payment-crypto/verify-arqc", request);
+
+        VerifyArqcResponseDTO response = objectMapper.readValue(result.getResponse().getContentAsString(), VerifyArqcResponseDTO.class);
+        assertTrue(response.arqcVerificationResult());
+    }
+
+    @Test
+    void calculateOffset() throws Exception {
+        String pan = "6203011199415646";
+
+        CalculateOffsetRequestDTO request = new CalculateOffsetRequestDTO("zpk-tdes", pinBlockConstructor.constructPinBlock("1234", pan), "pvk-tdes", pan,
+            "123456N12345", "1234567890987654", 4);
+
+        MvcResult result = perform("/api/reactive/payment-crypto/offset", request);
+
+        assertEquals("5740FFFFFFFF", result.getResponse().getContentAsString());
+    }
+
+    @Test
+    void verifyPinBatch() throws Exception {
+        String pan = "6203011199415646";
+
+        List<VerifyPinRequestDTO> requests = List.of(
+            new VerifyPinRequestDTO("zpk-tdes", pinBlockConstructor.constructPinBlock("1234", pan), "pvk-tdes", pan, "123456N12345", "1234567890987654", 4, "5740FFFFFFFF"),
+            new VerifyPinRequestDTO("zpk-tdes", pinBlockConstructor.constructPinBlock("4321", pan), "pvk-tdes", pan, "123456N12345", "1234567890987654", 4, "5740FFFFFFFF"),
+            new VerifyPinRequestDTO("zpk-tdes", pinBlockConstructor.constructPinBlock("1234", pan), "pvk-unknown", pan, "123456N12345", "1234567890987654", 4, "5740FFFFFFFF")
+        );
+
+        MvcResult result = perform("/api/reactive/payment-crypto/verify-pin/batch", requests);
+
+        List<BatchResultDTO<VerifyPinResponseDTO>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        assertEquals(3, response.size());
+        assertTrue(response.get(0).result().pinVerificationResult());
+        assertFalse(response.get(1).result().pinVerificationResult());
+        assertEquals("Key not found: pvk-unknown", response.get(2).error());
+    }
+
+    private MvcResult perform(String url, Object body) throws Exception {
+        MvcResult asyncResult = mockMvc.perform(post(url)
+                .content(objectMapper.writeValueAsBytes(body))
+                .contentType(APPLICATION_JSON))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        return mockMvc.perform(asyncDispatch(asyncResult))
+            .andExpectAll(status().isOk())
+            .andReturn();
+    }
+}
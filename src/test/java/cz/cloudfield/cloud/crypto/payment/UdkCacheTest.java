@@ -0,0 +1,54 @@
+package cz.cloudfield.cloud.crypto.payment;
+
+import cz.cloudfield.cloud.crypto.utils.CryptogramCalculator;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class UdkCacheTest {
+
+    private static final SecretKey IMK = new SecretKeySpec(HexFormat.of().parseHex("F78AFE0DE1BBE7AE28C0450CE43C084F4BBB2BF1839DEE466D852CB5BE6A61AA"), "AES");
+    private static final SecretKey ROTATED_IMK = new SecretKeySpec(HexFormat.of().parseHex("000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F"), "AES");
+
+    @Test
+    void cachedUdkEqualsDerivedUdk() throws Exception {
+        UdkCache udkCache = new UdkCache(new UdkCacheProperties(true, 16));
+
+        for (int i = 0; i < 2; i++) {
+            SecretKey udk = udkCache.getUdk("imk-aes", IMK, "3205984555533619", "70");
+
+            assertArrayEquals(CryptogramCalculator.deriveUDK("3205984555533619", "70", IMK).getEncoded(), udk.getEncoded());
+        }
+    }
+
+    @Test
+    void evictedUdkIsDerivedAgain() throws Exception {
+        UdkCache udkCache = new UdkCache(new UdkCacheProperties(true, 8));
+
+        for (int round = 0; round < 2; round++) {
+            for (int card = 0; card < 100; card++) {
+                String pan = String.valueOf(4_000_000_000_000_000L + card);
+                SecretKey udk = udkCache.getUdk("imk-aes", IMK, pan, "01");
+
+                assertArrayEquals(CryptogramCalculator.deriveUDK(pan, "01", IMK).getEncoded(), udk.getEncoded());
+            }
+        }
+    }
+
+    @Test
+    void udksAreWipedWhenImkChanges() throws Exception {
+        UdkCache udkCache = new UdkCache(new UdkCacheProperties(true, 16));
+        udkCache.getUdk("imk-aes", IMK, "3205984555533619", "70");
+
+        SecretKey reloadedImk = new SecretKeySpec(IMK.getEncoded(), "AES");
+        assertArrayEquals(CryptogramCalculator.deriveUDK("3205984555533619", "70", IMK).getEncoded(),
+            udkCache.getUdk("imk-aes", reloadedImk, "3205984555533619", "70").getEncoded());
+
+        assertArrayEquals(CryptogramCalculator.deriveUDK("3205984555533619", "70", ROTATED_IMK).getEncoded(),
+            udkCache.getUdk("imk-aes", ROTATED_IMK, "3205984555533619", "70").getEncoded());
+    }
+}
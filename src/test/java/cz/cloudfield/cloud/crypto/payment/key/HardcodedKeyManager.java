@@ -1,12 +1,16 @@
 package cz.cloudfield.cloud.crypto.payment.key;
 
+import cz.cloudfield.cloud.crypto.key.CreateKeyRequestDTO;
 import cz.cloudfield.cloud.crypto.key.CryptographicKey;
 import cz.cloudfield.cloud.crypto.key.KeyManager;
+import cz.cloudfield.cloud.crypto.key.KeyNotFoundException;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
@@ -19,21 +23,53 @@ public class HardcodedKeyManager implements KeyManager {
     private static final Map<String, SecretKey> KEY_MAP = new ConcurrentHashMap<>(Map.of(
         "pvk-tdes", new SecretKeySpec(HexFormat.of().parseHex("0123456789ABCDEFFEDCBA98765432100123456789ABCDEF"), "DESede"),
         "zpk-tdes", new SecretKeySpec(HexFormat.of().parseHex("0123456789ABCDEFFEDCBA98765432100123456789ABCDEF"), "DESede"),
-        "kek-aes", new SecretKeySpec(HexFormat.of().parseHex("000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F"), "AES")
+        "kek-aes", new SecretKeySpec(HexFormat.of().parseHex("000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F"), "AES"),
+        "imk-aes", new SecretKeySpec(HexFormat.of().parseHex("F78AFE0DE1BBE7AE28C0450CE43C084F4BBB2BF1839DEE466D852CB5BE6A61AA"), "AES")
+    ));
+
+    private static final Map<String, String> KEY_TYPES = new ConcurrentHashMap<>(Map.of(
+        "pvk-tdes", "PVK",
+        "zpk-tdes", "ZPK",
+        "kek-aes", "KEK",
+        "imk-aes", "IMK"
     ));
 
     @Override
     public SecretKey getKey(String alias, String keyVersion) {
         if (!KEY_MAP.containsKey(alias)) {
-            throw new IllegalArgumentException("Key not found: " + alias);
+            throw new KeyNotFoundException(alias);
         }
 
         return KEY_MAP.get(alias);
     }
 
+    @Override
+    public String getKeyType(String alias, String keyVersion) {
+        if (!KEY_TYPES.containsKey(alias)) {
+            throw new KeyNotFoundException(alias);
+        }
+
+        return KEY_TYPES.get(alias);
+    }
+
     @Override
     public void createKey(String alias, String keyVersion, String keyAlgorithm, String keyType, byte[] keyData) {
         KEY_MAP.putIfAbsent(alias, new SecretKeySpec(keyData, keyAlgorithm));
+        KEY_TYPES.putIfAbsent(alias, keyType);
+    }
+
+    /**
+     * Like the unique index of the key table, an existing key fails all keys.
+     */
+    @Override
+    public void createKeys(List<CreateKeyRequestDTO> keys) {
+        keys.stream()
+            .filter(key -> KEY_MAP.containsKey(key.keyAlias()))
+            .findFirst()
+            .ifPresent(key -> {
+                throw new IllegalStateException("Key " + key.keyAlias() + " already exists");
+            });
+        keys.forEach(key -> createKey(key.keyAlias(), key.keyVersion(), key.keyAlgorithm(), key.keyType(), key.keyData()));
     }
 
     @Override
@@ -43,4 +79,50 @@ public class HardcodedKeyManager implements KeyManager {
 //            .toList();
         return null;
     }
+
+    @Override
+    public List<String> findMostLoadedAliases(String keyVersion, int limit) {
+        return KEY_MAP.keySet().stream().sorted().limit(limit).toList();
+    }
+
+    @Override
+    public List<CryptographicKey> findKeys(Collection<String> aliases) {
+        return aliases.stream()
+            .filter(KEY_MAP::containsKey)
+            .<CryptographicKey>map(alias -> new HardcodedKey(alias, KEY_MAP.get(alias).getAlgorithm(), KEY_TYPES.get(alias)))
+            .toList();
+    }
+
+    private record HardcodedKey(String keyAlias, String keyAlgorithm, String keyType) implements CryptographicKey {
+
+        @Override
+        public String getKeyAlias() {
+            return keyAlias;
+        }
+
+        @Override
+        public String getKeyAlgorithm() {
+            return keyAlgorithm;
+        }
+
+        @Override
+        public String getKeyVersion() {
+            return "01";
+        }
+
+        @Override
+        public String getKeyType() {
+            return keyType;
+        }
+
+        @Override
+        public LocalDateTime getCreated() {
+            return null;
+        }
+
+        @Override
+        public LocalDateTime getUpdated() {
+            return null;
+        }
+    }
 }
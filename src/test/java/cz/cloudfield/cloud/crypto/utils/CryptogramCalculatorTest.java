@@ -0,0 +1,67 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.macs.CMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CryptogramCalculatorTest {
+
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    @Test
+    void calculateArqcOfPaddedData() throws Exception {
+        SecretKey imk = new SecretKeySpec(HEX.parseHex("F78AFE0DE1BBE7AE28C0450CE43C084F4BBB2BF1839DEE466D852CB5BE6A61AA"), "AES");
+
+        byte[] arqc = CryptogramCalculator.calculateARQC(imk, "3205984555533619", "70", "BD6743E7DC978573998E685E885C", "0F40");
+
+        assertEquals("89C1B64CB92D0ED2", HEX.formatHex(arqc));
+    }
+
+    @Test
+    void calculateArqcOfMultiBlockData() throws Exception {
+        SecretKey imk = new SecretKeySpec(HEX.parseHex("F11059EB6FBCE62655DFBD6F83B89670D6D9F9BF52D83DEEDC0BF66205835CCC"), "AES");
+
+        byte[] arqc = CryptogramCalculator.calculateARQC(imk, "2377743501502819123", "64", "8C478A26F450279849599B56DD53B3351A572B40F27F72D37F347B5D", "97E9");
+
+        assertEquals("FA0D731830E9CEBB", HEX.formatHex(arqc));
+    }
+
+    @Test
+    void calculateArqcFromDirectBuffer() throws Exception {
+        SecretKey imk = new SecretKeySpec(HEX.parseHex("F78AFE0DE1BBE7AE28C0450CE43C084F4BBB2BF1839DEE466D852CB5BE6A61AA"), "AES");
+        byte[] data = HEX.parseHex("FFFFBD6743E7DC978573998E685E885C");
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).put(data).position(2);
+
+        byte[] arqc = CryptogramCalculator.calculateARQC(imk, "3205984555533619", "70", buffer, HEX.parseHex("0F40"));
+
+        assertEquals("89C1B64CB92D0ED2", HEX.formatHex(arqc));
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    void calculateMacOfCompleteBlocksIsCmac() throws Exception {
+        byte[] sessionKey = HEX.parseHex("2B7E151628AED2A6ABF7158809CF4F3C2B7E151628AED2A6ABF7158809CF4F3C");
+        byte[] data = HEX.parseHex("6BC1BEE22E409F96E93D7E117393172AAE2D8A571E03AC9C9EB76FAC45AF8E51");
+
+        CMac cmac = new CMac(AESEngine.newInstance());
+        cmac.init(new KeyParameter(sessionKey));
+        cmac.update(data, 0, data.length);
+        byte[] expected = new byte[16];
+        cmac.doFinal(expected, 0);
+
+        byte[] mac = CryptogramCalculator.calculateMAC(new SecretKeySpec(sessionKey, "AES"), ByteBuffer.wrap(data));
+
+        assertArrayEquals(Arrays.copyOf(expected, 8), mac);
+    }
+}
@@ -0,0 +1,125 @@
+package cz.cloudfield.cloud.crypto.utils;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PinOffsetHelperTest {
+
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    private static final String PAN = "8621249928562171";
+    private static final String PIN_BLOCK = "8DDC454A0A61EDB2";
+    private static final String DECIMALIZATION_TABLE = "4906133915286645";
+    private static final String PIN_VALIDATION_DATA = "123456N12345";
+    private static final int PIN_LENGTH = 7;
+    private static final String OFFSET = "6890263FFFFF";
+
+    private final PinOffsetHelper pinOffsetHelper = new PinOffsetHelper(
+        new SecretKeySpec(HEX.parseHex("183477A35A94C9BF390B770209D32A59"), "DESede"),
+        new SecretKeySpec(HEX.parseHex("5D4A987D41F4B3E592471ABE05194BB55DCAB3910016175A"), "DESede"));
+
+    @Test
+    void extractPin() throws Exception {
+        byte[] pin = new byte[PinOffsetHelper.MAX_PIN_LENGTH];
+
+        int pinLength = pinOffsetHelper.extractPin(HEX.parseHex(PIN_BLOCK), PAN, pin);
+
+        assertEquals(11, pinLength);
+        assertArrayEquals(new byte[]{5, 2, 1, 8, 7, 9, 2, 4, 3, 1, 8, 0}, pin);
+        assertEquals("52187924318", pinOffsetHelper.extractPinFromPinBlock(PIN_BLOCK, PAN));
+    }
+
+    @Test
+    void calculateOffset() throws Exception {
+        String offset = pinOffsetHelper.calculateOffset(HEX.parseHex(PIN_BLOCK), PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH);
+
+        assertEquals(OFFSET, offset);
+    }
+
+    @Test
+    void reportStages() throws Exception {
+        List<CryptoStage> stages = new ArrayList<>();
+        PinOffsetHelper helper = new PinOffsetHelper(
+            new SecretKeySpec(HEX.parseHex("183477A35A94C9BF390B770209D32A59"), "DESede"),
+            new SecretKeySpec(HEX.parseHex("5D4A987D41F4B3E592471ABE05194BB55DCAB3910016175A"), "DESede"),
+            (stage, nanos) -> {
+                assertTrue(nanos >= 0);
+                stages.add(stage);
+            });
+
+        helper.calculateOffset(HEX.parseHex(PIN_BLOCK), PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH);
+
+        assertEquals(List.of(CryptoStage.PIN_BLOCK_DECRYPT, CryptoStage.NATURAL_PIN), stages);
+    }
+
+    @Test
+    void stringAdaptersMatchDigitArrays() throws Exception {
+        String naturalPin = pinOffsetHelper.calculateNaturalPin(PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH);
+
+        assertEquals("1008955", naturalPin);
+        assertEquals(OFFSET, pinOffsetHelper.calculateOffset(naturalPin, "52187924318"));
+        assertEquals("5218792", pinOffsetHelper.calculateExpectedPin(naturalPin, OFFSET));
+    }
+
+    @Test
+    void verifyPin() throws Exception {
+        byte[] pinBlock = HEX.parseHex(PIN_BLOCK);
+
+        // the PIN block carries 11 digits, only PINs of the same length are accepted
+        assertFalse(pinOffsetHelper.verifyPin(pinBlock, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH, OFFSET));
+
+        String offset = pinOffsetHelper.calculateOffset(pinBlock, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, 11);
+        assertTrue(pinOffsetHelper.verifyPin(pinBlock, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, 11, offset));
+        assertFalse(pinOffsetHelper.verifyPin(pinBlock, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, 11, "1" + offset.substring(1)));
+    }
+
+    @Test
+    void changePin() throws Exception {
+        byte[] pinBlock = HEX.parseHex(PIN_BLOCK);
+        String offset = pinOffsetHelper.calculateOffset(pinBlock, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, 11);
+
+        // changing the PIN to the same PIN keeps the offset
+        assertEquals(offset, pinOffsetHelper.changePin(pinBlock, pinBlock, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, 11, offset));
+        assertNull(pinOffsetHelper.changePin(pinBlock, pinBlock, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, 11, "1" + offset.substring(1)));
+    }
+
+    @Test
+    void changePinRejectsPinOfDifferentLength() {
+        byte[] pinBlock = HEX.parseHex(PIN_BLOCK);
+
+        // the PIN block carries 11 digits, the offset would cover only the first 7 of them
+        assertThrows(IllegalArgumentException.class,
+            () -> pinOffsetHelper.changePin(pinBlock, pinBlock, PAN, DECIMALIZATION_TABLE, PIN_VALIDATION_DATA, PIN_LENGTH, OFFSET));
+    }
+
+    @Test
+    void precompiledTablesAreInterned() throws Exception {
+        DecimalizationTable decimalizationTable = DecimalizationTable.of(DECIMALIZATION_TABLE);
+        PinValidationDataTemplate pinValidationData = PinValidationDataTemplate.of(PIN_VALIDATION_DATA);
+        assertSame(decimalizationTable, DecimalizationTable.of(new String(DECIMALIZATION_TABLE.toCharArray())));
+        assertSame(pinValidationData, PinValidationDataTemplate.of(new String(PIN_VALIDATION_DATA.toCharArray())));
+
+        byte[] naturalPin = new byte[PIN_LENGTH];
+        pinOffsetHelper.calculateNaturalPin(PAN, decimalizationTable, pinValidationData, PIN_LENGTH, naturalPin);
+        assertArrayEquals(new byte[]{1, 0, 0, 8, 9, 5, 5}, naturalPin);
+    }
+
+    @Test
+    void rejectInvalidTables() {
+        assertThrows(IllegalArgumentException.class, () -> DecimalizationTable.of("123456789098765"));
+        assertThrows(IllegalArgumentException.class, () -> DecimalizationTable.of("12345678909876AB"));
+        assertThrows(IllegalArgumentException.class, () -> PinValidationDataTemplate.of("123456N123456"));
+        assertThrows(IllegalArgumentException.class, () -> PinValidationDataTemplate.of("123456N1234X"));
+    }
+
+    @Test
+    void rejectInvalidPinBlockLength() {
+        assertThrows(IllegalArgumentException.class, () -> pinOffsetHelper.extractPin(new byte[16], PAN, new byte[PinOffsetHelper.MAX_PIN_LENGTH]));
+    }
+}